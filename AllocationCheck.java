@@ -0,0 +1,49 @@
+package chess;
+
+import java.lang.management.ManagementFactory;
+
+/* Regression harness for allocation in the search. Each position of the perft
+suite is searched to a fixed depth, and the bytes allocated by the searching
+thread are counted with ThreadMXBean. Every node reuses the move buffers, undo
+objects and board of its search thread, so a search only allocates a fixed
+amount however many nodes it visits: the copy of the root board, the principal
+variation and the result. The check fails if any search allocates more than
+that allowance. Each position is searched once beforehand, so that the buffers
+(and the promoted pieces kept by the undo objects) already exist, and the
+transposition table is cleared before the measured search.
+
+Usage: java chess.AllocationCheck [depth]                                    */
+public class AllocationCheck {
+
+    //Bytes a search may allocate, whatever its number of nodes
+    static final long ALLOWANCE = 16 * 1024;
+
+    public static void main(String[] args) {
+        int depth = (args.length > 0 ? Integer.parseInt(args[0]) : 5);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)
+                ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        boolean passed = true;
+        System.out.println("Depth " + depth);
+        try (Engine engine = new Engine()) {
+            for (String[] position : Perft.SUITE) {
+                Board board = Board.fromFen(position[0]);
+                engine.search(board, SearchLimits.depth(depth));
+                engine.clearHash();
+                long bytes = threads.getThreadAllocatedBytes(thread);
+                SearchResult result = engine.search(board, SearchLimits.depth(depth));
+                bytes = threads.getThreadAllocatedBytes(thread) - bytes;
+                boolean match = bytes <= ALLOWANCE;
+                passed &= match;
+                System.out.printf("%s %d bytes, %d boards, %.3f B/board  [%s]%n",
+                        (match ? "OK  " : "FAIL"), bytes, result.getNodes(),
+                        (double) bytes / result.getNodes(), position[0]);
+            }
+        }
+        if (!passed) {
+            System.out.println("A search allocated more than " + ALLOWANCE
+                    + " bytes.");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package chess;
+
+/* Regression harness for the alpha-beta search. Each position in the suite is
+searched twice at the same depth - once with pruning switched off (plain
+minimax) and once with it on - and the root fitness of the two searches must
+match. The transposition table is cleared before each search. The number of
+boards evaluated by each search is reported, along with the reduction gained by
+pruning. Every evaluation is also checked against a full recount of the
+board, so drift in the incremental fitness fails the check. The quiescence
+search is switched off: it skips captures by estimate (delta pruning), so its
+results are not expected to match an unpruned search exactly. It is checked
+separately, on positions searched to depth 1 where the move is only found if
+the quiescence search plays out the replies to a check.
+
+Usage: java chess.AlphaBetaCheck [depth]                                     */
+public class AlphaBetaCheck {
+
+    //Positions, given as the moves played from the initial board
+    static final String[] POSITIONS = {
+        "",
+        "e2e4 e7e5 g1f3 b8c6 f1c4 g8f6",
+        "d2d4 d7d5 c2c4 e7e6 b1c3 g8f6 c1g5 f8e7",
+        "e2e4 d7d5 e4d5 d8d5 b1c3 d5a5",
+        "e2e4 e7e5 d1h5 b8c6 f1c4 g8f6", //White can mate in one
+        "e2e4 c7c5 g1f3 d7d6 d2d4 c5d4 f3d4 g8f6 b1c3 a7a6",
+        "e2e4 e7e5 g1f3 b8c6 f1b5 a7a6 b5a4 g8f6 e1g1 f8e7 f1e1 b7b5 a4b3"
+    };
+
+    //Positions for the quiescence search, with the move expected at depth 1
+    //and whether it mates
+    static final String[][] QUIESCENCE_POSITIONS = {
+        {"r1bqkb1r/pppp1ppp/2n2n2/4p2Q/2B1P3/8/PPPP1PPP/RNB1K1NR w KQkq - 4 4",
+            "h5f7", "mate"},
+        {"4k3/8/8/1q6/4N3/8/8/4K3 w - - 0 1", "e4d6", ""} //Fork from a check
+    };
+
+    public static void main(String[] args) {
+        int depth = (args.length > 0 ? Integer.parseInt(args[0]) : 3);
+        Minimax.setDepth(depth);
+        Board.setDebugEval(true);
+        Minimax.setQuiescenceBudget(0);
+        boolean passed = true;
+        System.out.println("Depth " + depth);
+        for (String position : POSITIONS) {
+            Board board = new Board();
+            boolean white = play(board, position);
+            Player player = board.getPlayer(white);
+
+            Minimax.setPruning(false);
+            Minimax.clearHash();
+            Minimax.getNextMove(board, player);
+            int plainScore = Minimax.score;
+            long plainCount = Minimax.counter;
+
+            Minimax.setPruning(true);
+            Minimax.clearHash();
+            Minimax.getNextMove(board, player);
+            int prunedScore = Minimax.score;
+            long prunedCount = Minimax.counter;
+
+            boolean match = plainScore == prunedScore;
+            passed &= match;
+            System.out.printf("%s minimax %d (%d boards), alpha-beta %d (%d boards),"
+                    + " %.1f%% fewer boards  [%s]%n", (match ? "OK  " : "FAIL"),
+                    plainScore, plainCount, prunedScore, prunedCount,
+                    100.0 * (plainCount - prunedCount) / plainCount,
+                    (position.isEmpty() ? "initial board" : position));
+        }
+        if (!passed) {
+            System.out.println("Alpha-beta fitness differs from minimax.");
+            System.exit(1);
+        }
+        if (!checkQuiescence()) {
+            System.out.println("The quiescence search missed a reply to check.");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Searches the quiescence positions to depth 1, with the quiescence search
+     * on, and checks the moves found.
+     *
+     * @return Boolean indicating whether every move was found.
+     */
+    static boolean checkQuiescence() {
+        Minimax.setDepth(1);
+        Minimax.setPruning(true);
+        Minimax.setQuiescenceBudget(1000);
+        boolean passed = true;
+        System.out.println("Quiescence, depth 1");
+        for (String[] position : QUIESCENCE_POSITIONS) {
+            Board board = Board.fromFen(position[0]);
+            Minimax.clearHash();
+            Move move = Minimax.getNextMove(board,
+                    board.getPlayer(board.isWhiteToMove()));
+            String found = (move == null ? "none" : move.toCoordinate());
+            boolean mate = Math.abs(Minimax.score) > Engine.MATE / 2;
+            boolean match = found.equals(position[1])
+                    && mate == position[2].equals("mate");
+            passed &= match;
+            System.out.printf("%s %s, fitness %d (expected %s%s)  [%s]%n",
+                    (match ? "OK  " : "FAIL"), found, Minimax.score, position[1],
+                    (position[2].isEmpty() ? "" : ", " + position[2]),
+                    position[0]);
+        }
+        return passed;
+    }
+
+    /**
+     * Plays a list of moves on a board.
+     *
+     * @param board The board to play the moves on.
+     * @param moves Moves in coordinate notation, separated by spaces.
+     * @return Boolean indicating which player is to move afterwards.
+     */
+    static boolean play(Board board, String moves) {
+        boolean white = true;
+        for (String text : moves.trim().split(" +")) {
+            if (!text.isEmpty()) {
+                board.move(Move.parse(text, board));
+                white = !white;
+            }
+        }
+        return white;
+    }
+}
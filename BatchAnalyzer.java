@@ -0,0 +1,236 @@
+package chess;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/* Headless batch analysis. Positions are read from the input file, one per
+line, given either in FEN or as the moves played from the initial board in
+coordinate notation (blank lines and lines starting with '#' are skipped).
+Each position is searched to a fixed depth or node limit, spread across a pool
+of workers, and a line is written to the output file as soon as each search
+finishes:
+
+    index <tab> best move <tab> score <tab> nodes <tab> ms <tab> position
+
+The index is the position's line number in the input, since the results come
+out in the order the searches finish. The score is for the player to move.
+Positions that cannot be played are written with "error" as the best move.
+
+Each worker has its own engine, so the workers share nothing but the input
+and output files. A worker keeps its engine (transposition table and search
+buffers) for the whole batch, and clears the table between positions so that
+the results do not depend on which worker searched what before. The worker
+also keeps two boards, which the engine searches in place. A position given as
+moves is played onto the initial board, checking each move, and taken back
+after the search; a position in FEN is set up on the other board, reusing the
+pieces of the one before.
+
+Usage: java chess.BatchAnalyzer <input> <output> [depth=N | nodes=N]
+                                [workers] [hash megabytes]                 */
+public class BatchAnalyzer {
+
+    private static final int MAX_MOVES = 1024; //Longest position, in moves
+    private final BufferedReader input;
+    private final PrintWriter output;
+    private final SearchLimits limits;
+    private final int hashSize;
+    private int lineNumber; //Line number of the last line read
+
+    /**
+     * Constructor.
+     *
+     * @param input Reader of the positions.
+     * @param output Writer that the results are written to.
+     * @param limits Limits of the search of each position.
+     * @param hashSize Size of each worker's transposition table in megabytes.
+     */
+    public BatchAnalyzer(BufferedReader input, PrintWriter output,
+            SearchLimits limits, int hashSize) {
+        this.input = input;
+        this.output = output;
+        this.limits = limits;
+        this.hashSize = hashSize;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: java chess.BatchAnalyzer <input> <output>"
+                    + " [depth=N | nodes=N] [workers] [hash megabytes]");
+            return;
+        }
+        SearchLimits limits = parseLimits(args.length > 2 ? args[2] : "depth=4");
+        int workers = (args.length > 3 ? Integer.parseInt(args[3])
+                : Runtime.getRuntime().availableProcessors());
+        int hashSize = (args.length > 4 ? Integer.parseInt(args[4]) : 16);
+        long start = System.nanoTime();
+        int positions;
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(args[0]));
+                PrintWriter out = new PrintWriter(
+                        Files.newBufferedWriter(Paths.get(args[1])))) {
+            positions = new BatchAnalyzer(in, out, limits, hashSize).run(workers);
+        }
+        System.out.printf("Analyzed %d positions with %d workers in %.2fs%n",
+                positions, workers, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Reads the search limit from the command line: "depth=N", "nodes=N", or
+     * a plain number, which is a depth.
+     *
+     * @param text The limit as given on the command line.
+     * @return
+     */
+    static SearchLimits parseLimits(String text) {
+        if (text.startsWith("nodes=")) {
+            return SearchLimits.nodes(Long.parseLong(text.substring(6)));
+        }
+        if (text.startsWith("depth=")) {
+            text = text.substring(6);
+        }
+        return SearchLimits.depth(Integer.parseInt(text));
+    }
+
+    /**
+     * Analyzes every position of the input, and waits for the workers to
+     * finish.
+     *
+     * @param workers Number of workers to search with.
+     * @return The number of positions analyzed.
+     */
+    public int run(int workers) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, workers));
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, workers); i++) {
+            results.add(pool.submit(this::work));
+        }
+        int positions = 0;
+        try {
+            for (Future<Integer> result : results) {
+                positions += result.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return positions;
+    }
+
+    /**
+     * Analyzes positions until the input runs out. Runs on each worker.
+     *
+     * @return The number of positions the worker analyzed.
+     */
+    private int work() throws IOException {
+        int positions = 0;
+        Board board = new Board();
+        Board fenBoard = new Board();
+        List<UndoInfo> undos = new ArrayList<>();
+        int[] moves = new int[MAX_MOVES];
+        try (Engine engine = new Engine(hashSize)) {
+            String[] line = new String[1];
+            for (int index = next(line); index >= 0; index = next(line)) {
+                String position = line[0].trim();
+                Board start = board;
+                int played = 0;
+                try {
+                    if (position.indexOf('/') >= 0) { //FEN
+                        fenBoard.setFen(position);
+                        start = fenBoard;
+                    } else {
+                        played = play(board, position, moves, undos);
+                    }
+                } catch (IllegalArgumentException e) {
+                    start = null;
+                }
+                if (start == null || played < 0) {
+                    played = (played < 0 ? -played - 1 : 0); //Moves made
+                    write(index + "\terror\t\t\t\t" + position);
+                } else {
+                    engine.clearHash();
+                    SearchResult result = engine.searchInPlace(start, limits);
+                    write(index + "\t" + (result.getMove() == null ? "none"
+                            : result.getMove().toCoordinate())
+                            + "\t" + result.getScore() + "\t" + result.getNodes()
+                            + "\t" + result.getTime().toMillis() + "\t" + position);
+                }
+                //Take the position back, leaving the initial board
+                for (int i = played - 1; i >= 0; i--) {
+                    board.unmakeMove(moves[i], undos.get(i));
+                }
+                positions++;
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Reads the next position from the input.
+     *
+     * @param line Array that the line is returned in.
+     * @return The line number of the position, or -1 at the end of the input.
+     */
+    private synchronized int next(String[] line) throws IOException {
+        String text;
+        do {
+            text = input.readLine();
+            lineNumber++;
+        } while (text != null && (text.isBlank() || text.startsWith("#")));
+        line[0] = text;
+        return (text == null ? -1 : lineNumber);
+    }
+
+    /**
+     * Writes a line of results, and flushes it so that the results can be
+     * followed as they come in.
+     *
+     * @param text
+     */
+    private synchronized void write(String text) {
+        output.println(text);
+        output.flush();
+    }
+
+    /**
+     * Plays a list of moves on a board, checking that each is legal. The
+     * moves are made so they can be taken back, with the undo objects reused
+     * from one position to the next.
+     *
+     * @param board The board to play the moves on.
+     * @param position Moves in coordinate notation, separated by spaces.
+     * @param moves Array that the packed moves played are written to.
+     * @param undos Undo objects of the moves, added to as needed.
+     * @return The number of moves played, or if a move was not legal, -1 minus
+     * the number of moves played before it (which are left on the board).
+     */
+    static int play(Board board, String position, int[] moves,
+            List<UndoInfo> undos) {
+        int played = 0;
+        IntMoveList legal = new IntMoveList();
+        for (String text : position.split(" +")) {
+            if (text.isEmpty()) {
+                continue;
+            }
+            Move move = Move.parse(text, board);
+            int packed = (move == null || played == moves.length ? 0
+                    : move.pack(board));
+            legal.clear();
+            MoveGenerator.generateLegalMoves(board, board.isWhiteToMove(), legal);
+            if (packed == 0 || !legal.contains(packed)) {
+                return -played - 1;
+            }
+            if (undos.size() == played) {
+                undos.add(new UndoInfo());
+            }
+            board.makeMove(packed, undos.get(played));
+            moves[played++] = packed;
+        }
+        return played;
+    }
+}
@@ -0,0 +1,291 @@
+package chess;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntToLongFunction;
+
+/* Leaf throughput benchmark. For each position of the AlphaBetaCheck suite the
+moves of the side to move are generated once, then each is repeatedly made, the
+resulting board evaluated, and the move unmade - the work done at every leaf of
+the search. The number of leaves per second is reported, after a warm-up pass
+that lets the JIT compile the loop.
+
+The threads benchmark searches the same positions to a fixed depth with 1, 2, 4
+and so on threads, finishing with N, in each parallel search mode. It reports
+the time taken and the speedup over one thread. The transposition table is
+cleared before each search.
+
+The ops benchmark times single operations - Piece.isValid for each kind of
+piece, Board.getNextBoards, Board.safeMove, Board.boardEval, the Board copy
+constructor and a depth 4 search - on an opening, a middlegame and an endgame
+position. Each is warmed up, then run for the given time, and the operations
+per second and bytes allocated per operation (by the benchmark thread) are
+reported. Its output can be saved and passed back in as a baseline, to show the
+change in each result.
+
+Usage: java chess.Benchmark [seconds]
+       java chess.Benchmark threads [depth] [N]
+       java chess.Benchmark ops [seconds] [baseline file]                   */
+public class Benchmark {
+
+    static long sink; //Keeps the results of the operations from being optimised away
+
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("threads")) {
+            threads((args.length > 1 ? Integer.parseInt(args[1]) : 5),
+                    (args.length > 2 ? Integer.parseInt(args[2])
+                            : Runtime.getRuntime().availableProcessors()));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("ops")) {
+            ops((args.length > 1 ? Double.parseDouble(args[1]) : 1),
+                    (args.length > 2 ? args[2] : null));
+            return;
+        }
+        double seconds = (args.length > 0 ? Double.parseDouble(args[0]) : 5);
+        Board[] boards = new Board[AlphaBetaCheck.POSITIONS.length];
+        boolean[] sides = new boolean[boards.length];
+        IntMoveList[] moves = new IntMoveList[boards.length];
+        for (int i = 0; i < boards.length; i++) {
+            boards[i] = new Board();
+            sides[i] = AlphaBetaCheck.play(boards[i], AlphaBetaCheck.POSITIONS[i]);
+            moves[i] = new IntMoveList();
+            MoveGenerator.generateMoves(boards[i], sides[i], moves[i]);
+        }
+        leaves(boards, sides, moves, (long) (seconds * 2e8)); //Warm up
+        long start = System.nanoTime();
+        long count = leaves(boards, sides, moves, (long) (seconds * 1e9));
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Leaves: %d in %.2fs, %.0f leaves/s%n", count, elapsed,
+                count / elapsed);
+    }
+
+    /**
+     * Times fixed depth searches of the positions with increasing numbers of
+     * threads.
+     *
+     * @param depth Depth to search each position to.
+     * @param maxThreads Largest number of threads to search with.
+     */
+    private static void threads(int depth, int maxThreads) {
+        Minimax.setDepth(depth);
+        for (int i = 0; i < 3; i++) {
+            search(); //Warm up
+        }
+        String[] modes = {"Lazy SMP", "Root split"};
+        for (int mode = Minimax.LAZY_SMP; mode <= Minimax.ROOT_SPLIT; mode++) {
+            Minimax.setParallelMode(mode);
+            double single = 0;
+            for (int threads = 1; threads <= maxThreads;
+                    threads = (threads == maxThreads ? threads + 1
+                            : Math.min(threads * 2, maxThreads))) {
+                Minimax.setThreads(threads);
+                long start = System.nanoTime();
+                long boards = search();
+                double elapsed = (System.nanoTime() - start) / 1e9;
+                if (threads == 1) {
+                    single = elapsed;
+                }
+                System.out.printf("%-10s  threads: %2d  %.2fs  %d boards"
+                        + "  speedup %.2f%n", modes[mode], threads, elapsed,
+                        boards, single / elapsed);
+            }
+        }
+        Minimax.setThreads(1);
+        Minimax.setParallelMode(Minimax.LAZY_SMP);
+    }
+
+    /**
+     * Times each operation on each position, and prints the results next to
+     * the baseline's.
+     *
+     * @param seconds Time to run each operation for, on each position.
+     * @param baseline File holding earlier output of this benchmark, or null.
+     */
+    private static void ops(double seconds, String baseline) {
+        Map<String, Double> base = readBaseline(baseline);
+        String[] names = {"opening", "middlegame", "endgame"};
+        Board[] boards = {new Board(), Board.fromFen(Perft.SUITE[5][0]),
+            Board.fromFen(Perft.SUITE[2][0])};
+        AlphaBetaCheck.play(boards[0], AlphaBetaCheck.POSITIONS[1]);
+        Move[][] moves = new Move[boards.length][];
+        for (int i = 0; i < boards.length; i++) {
+            IntMoveList list = new IntMoveList();
+            MoveGenerator.generateMoves(boards[i], boards[i].isWhiteToMove(), list);
+            moves[i] = new Move[list.size()];
+            for (int j = 0; j < list.size(); j++) {
+                moves[i][j] = new Move(list.get(j));
+            }
+        }
+        Engine engine = new Engine(4);
+        //Each operation runs once on a position and returns the times it ran
+        Map<String, IntToLongFunction> ops = new LinkedHashMap<>();
+        for (int kind = Piece.PAWN; kind <= Piece.KING; kind++) {
+            int code = kind;
+            ops.put("isValid." + Piece.typeOf(kind), i -> isValid(boards[i], code));
+        }
+        ops.put("getNextBoards", i -> {
+            sink += boards[i].getNextBoards(boards[i].isWhiteToMove()).size();
+            return 1;
+        });
+        ops.put("safeMove", i -> {
+            for (Move m : moves[i]) {
+                sink += (boards[i].safeMove(m) ? 1 : 0);
+            }
+            return moves[i].length;
+        });
+        ops.put("boardEval", i -> {
+            for (int j = 0; j < 64; j++) {
+                sink += boards[i].boardEval((j & 1) == 0);
+            }
+            return 64;
+        });
+        ops.put("copy", i -> {
+            sink += new Board(boards[i]).getKey() == 0 ? 1 : 0;
+            return 1;
+        });
+        ops.put("search.d4", i -> {
+            engine.clearHash();
+            sink += engine.search(boards[i], SearchLimits.depth(4)).getScore();
+            return 1;
+        });
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)
+                ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (Map.Entry<String, IntToLongFunction> op : ops.entrySet()) {
+            for (int i = 0; i < boards.length; i++) {
+                if (run(op.getValue(), i, (long) (seconds * 5e8)) == 0) { //Warm up
+                    continue; //Eg no pieces of the kind on the board
+                }
+                long bytes = threads.getThreadAllocatedBytes(thread);
+                long start = System.nanoTime();
+                long count = run(op.getValue(), i, (long) (seconds * 1e9));
+                double elapsed = (System.nanoTime() - start) / 1e9;
+                bytes = threads.getThreadAllocatedBytes(thread) - bytes;
+                String key = op.getKey() + " " + names[i];
+                double rate = count / elapsed;
+                System.out.printf("%-14s %-10s %14.0f ops/s %12.1f B/op%s%n",
+                        op.getKey(), names[i], rate, (double) bytes / count,
+                        (base.containsKey(key) ? String.format("  %+.1f%%",
+                                100 * (rate / base.get(key) - 1)) : ""));
+            }
+        }
+        engine.close();
+    }
+
+    /**
+     * Runs an operation on a position until the time is up.
+     *
+     * @param op The operation.
+     * @param position Index of the position.
+     * @param nanos Time to run for, in nanoseconds.
+     * @return The number of times the operation ran.
+     */
+    private static long run(IntToLongFunction op, int position, long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        long count = 0;
+        while (System.nanoTime() < deadline) {
+            count += op.applyAsLong(position);
+        }
+        return count;
+    }
+
+    /**
+     * Calls isValid for every piece of a kind on a board, with every square as
+     * the destination.
+     *
+     * @param board The board.
+     * @param kind Kind of the pieces.
+     * @return The number of calls made.
+     */
+    private static long isValid(Board board, int kind) {
+        long count = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            Piece p = board.mailbox[sq];
+            if (p != null && (p.getCode() & 7) == kind) {
+                for (int to = 0; to < 64; to++) {
+                    sink += (p.isValid(to >> 3, to & 7, board) ? 1 : 0);
+                }
+                count += 64;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads the operations per second from earlier output of the ops
+     * benchmark.
+     *
+     * @param file The file holding the output, or null.
+     * @return Operations per second, by operation and position.
+     */
+    private static Map<String, Double> readBaseline(String file) {
+        Map<String, Double> base = new HashMap<>();
+        if (file == null) {
+            return base;
+        }
+        try {
+            for (String line : Files.readAllLines(Paths.get(file))) {
+                String[] fields = line.trim().split(" +");
+                if (fields.length >= 4 && fields[3].equals("ops/s")) {
+                    base.put(fields[0] + " " + fields[1],
+                            Double.parseDouble(fields[2]));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.out.println("Could not read the baseline: " + e.getMessage());
+        }
+        return base;
+    }
+
+    /**
+     * Searches every position once.
+     *
+     * @return The number of boards evaluated.
+     */
+    private static long search() {
+        long boards = 0;
+        for (String position : AlphaBetaCheck.POSITIONS) {
+            Board board = new Board();
+            boolean white = AlphaBetaCheck.play(board, position);
+            Minimax.clearHash();
+            Minimax.getNextMove(board, board.getPlayer(white));
+            boards += Minimax.counter;
+        }
+        return boards;
+    }
+
+    /**
+     * Makes, evaluates and unmakes the moves of every position until the time
+     * is up.
+     *
+     * @param boards Boards to play the moves on.
+     * @param sides Which player is to move on each board.
+     * @param moves Moves of the player to move on each board.
+     * @param nanos Time to run for, in nanoseconds.
+     * @return The number of leaves evaluated.
+     */
+    private static long leaves(Board[] boards, boolean[] sides, IntMoveList[] moves,
+            long nanos) {
+        UndoInfo undo = new UndoInfo();
+        long deadline = System.nanoTime() + nanos;
+        long count = 0;
+        while (System.nanoTime() < deadline) {
+            for (int i = 0; i < boards.length; i++) {
+                for (int j = 0; j < moves[i].size(); j++) {
+                    int move = moves[i].get(j);
+                    boards[i].makeMove(move, undo);
+                    sink += boards[i].boardEval(sides[i]);
+                    boards[i].unmakeMove(move, undo);
+                }
+                count += moves[i].size();
+            }
+        }
+        return count;
+    }
+}
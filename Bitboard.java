@@ -0,0 +1,161 @@
+package chess;
+
+/* Class containing the precomputed attack tables and helper methods used by the
+bitboard representation of the board. A bitboard is a long in which each bit
+represents one square. Squares are numbered row * 8 + col, so bit 0 is row 0,
+column 0 (Black's back rank) and bit 63 is row 7, column 7.                 */
+public class Bitboard {
+
+    //Ray directions. Positive directions walk towards higher square numbers.
+    static final int NORTH = 0;
+    static final int NORTH_EAST = 1;
+    static final int EAST = 2;
+    static final int SOUTH_EAST = 3;
+    static final int SOUTH = 4;
+    static final int SOUTH_WEST = 5;
+    static final int WEST = 6;
+    static final int NORTH_WEST = 7;
+
+    private static final int[] ROW_STEP = {-1, -1, 0, 1, 1, 1, 0, -1};
+    private static final int[] COL_STEP = {0, 1, 1, 1, 0, -1, -1, -1};
+    private static final boolean[] POSITIVE = {false, false, true, true, true,
+        true, false, false};
+
+    static final long[] KNIGHT_ATTACKS = new long[64];
+    static final long[] KING_ATTACKS = new long[64];
+    //Squares attacked by a pawn, indexed by [0 = white, 1 = black][square]
+    static final long[][] PAWN_ATTACKS = new long[2][64];
+    //Squares from a square to the edge of the board, indexed by [direction][square]
+    static final long[][] RAYS = new long[8][64];
+    //Every square except those in column 0 (the West edge) or 7 (the East edge)
+    static final long NOT_WEST = 0xfefefefefefefefeL;
+    static final long NOT_EAST = 0x7f7f7f7f7f7f7f7fL;
+    //Squares strictly between two squares on a line, and the whole line through
+    //them (edge to edge), indexed by [square][square]; 0 if not on a line
+    static final long[][] BETWEEN = new long[64][64];
+    static final long[][] LINE = new long[64][64];
+
+    static {
+        int[][] knightSteps = {{-2, -1}, {-2, 1}, {-1, -2}, {-1, 2}, {1, -2},
+        {1, 2}, {2, -1}, {2, 1}};
+        for (int sq = 0; sq < 64; sq++) {
+            int row = sq >> 3;
+            int col = sq & 7;
+            for (int[] step : knightSteps) {
+                KNIGHT_ATTACKS[sq] |= bit(row + step[0], col + step[1]);
+            }
+            for (int dir = 0; dir < 8; dir++) {
+                KING_ATTACKS[sq] |= bit(row + ROW_STEP[dir], col + COL_STEP[dir]);
+                //Walk to the edge of the board
+                for (int r = row + ROW_STEP[dir], c = col + COL_STEP[dir];
+                        r >= 0 && r < 8 && c >= 0 && c < 8;
+                        r += ROW_STEP[dir], c += COL_STEP[dir]) {
+                    RAYS[dir][sq] |= 1L << (r * 8 + c);
+                }
+            }
+            //White pawns move North (towards row 0), black pawns move South
+            PAWN_ATTACKS[0][sq] = bit(row - 1, col - 1) | bit(row - 1, col + 1);
+            PAWN_ATTACKS[1][sq] = bit(row + 1, col - 1) | bit(row + 1, col + 1);
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            for (int dir = 0; dir < 8; dir++) {
+                long ray = RAYS[dir][sq];
+                while (ray != 0) {
+                    int to = Long.numberOfTrailingZeros(ray);
+                    ray &= ray - 1;
+                    BETWEEN[sq][to] = RAYS[dir][sq] & ~RAYS[dir][to] & ~(1L << to);
+                    LINE[sq][to] = RAYS[dir][sq] | RAYS[(dir + 4) & 7][sq]
+                            | (1L << sq);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a bitboard with only the bit for the given location set, or 0 if
+     * the location is off the board.
+     *
+     * @param row Row number of the location.
+     * @param col Column number of the location.
+     * @return
+     */
+    static long bit(int row, int col) {
+        if (row < 0 || row > 7 || col < 0 || col > 7) {
+            return 0L;
+        }
+        return 1L << (row * 8 + col);
+    }
+
+    /**
+     * Returns the squares attacked along a single ray, stopping at (and
+     * including) the first occupied square.
+     *
+     * @param occupied Bitboard of all occupied squares.
+     * @param dir Direction of the ray.
+     * @param sq Square the ray starts from.
+     * @return
+     */
+    static long rayAttacks(long occupied, int dir, int sq) {
+        long attacks = RAYS[dir][sq];
+        long blockers = attacks & occupied;
+        if (blockers != 0) {
+            //The nearest blocker is the lowest bit on positive rays, highest otherwise
+            int blocker = POSITIVE[dir] ? Long.numberOfTrailingZeros(blockers)
+                    : 63 - Long.numberOfLeadingZeros(blockers);
+            attacks ^= RAYS[dir][blocker];
+        }
+        return attacks;
+    }
+
+    /**
+     * Returns the squares a rook on the given square attacks.
+     *
+     * @param occupied Bitboard of all occupied squares.
+     * @param sq Square of the rook.
+     * @return
+     */
+    static long rookAttacks(long occupied, int sq) {
+        return rayAttacks(occupied, NORTH, sq) | rayAttacks(occupied, EAST, sq)
+                | rayAttacks(occupied, SOUTH, sq) | rayAttacks(occupied, WEST, sq);
+    }
+
+    /**
+     * Returns the squares a bishop on the given square attacks.
+     *
+     * @param occupied Bitboard of all occupied squares.
+     * @param sq Square of the bishop.
+     * @return
+     */
+    static long bishopAttacks(long occupied, int sq) {
+        return rayAttacks(occupied, NORTH_EAST, sq)
+                | rayAttacks(occupied, SOUTH_EAST, sq)
+                | rayAttacks(occupied, SOUTH_WEST, sq)
+                | rayAttacks(occupied, NORTH_WEST, sq);
+    }
+
+    /**
+     * Returns the squares attacked by a set of pawns. White pawns attack
+     * towards row 0, black pawns towards row 7.
+     *
+     * @param pawns Bitboard of the pawns.
+     * @param white Boolean indicating which player the pawns belong to.
+     * @return
+     */
+    static long pawnAttacks(long pawns, boolean white) {
+        if (white) {
+            return ((pawns & NOT_WEST) >>> 9) | ((pawns & NOT_EAST) >>> 7);
+        }
+        return ((pawns & NOT_WEST) << 7) | ((pawns & NOT_EAST) << 9);
+    }
+
+    /**
+     * Returns the squares a queen on the given square attacks.
+     *
+     * @param occupied Bitboard of all occupied squares.
+     * @param sq Square of the queen.
+     * @return
+     */
+    static long queenAttacks(long occupied, int sq) {
+        return rookAttacks(occupied, sq) | bishopAttacks(occupied, sq);
+    }
+}
@@ -3,12 +3,60 @@ package chess;
 import java.util.ArrayList;
 
 /* Class representing the board. Contains both players and the last move 
-performed on the board.                                                      */
+performed on the board. The position itself is stored as bitboards (one per 
+piece code, plus one per colour) and a 64-entry mailbox of pieces, which are 
+kept in sync with the players' piece lists by every method that moves pieces.*/
 public class Board {
+
+    //Castling rights flags
+    static final int CASTLE_WHITE_EAST = 1;
+    static final int CASTLE_WHITE_WEST = 2;
+    static final int CASTLE_BLACK_EAST = 4;
+    static final int CASTLE_BLACK_WEST = 8;
+    //Castling rights kept when a piece moves from or to each square
+    static final int[] CASTLING_MASK = new int[64];
+
+    static {
+        java.util.Arrays.fill(CASTLING_MASK, 15);
+        CASTLING_MASK[60] = ~(CASTLE_WHITE_EAST | CASTLE_WHITE_WEST); //White king
+        CASTLING_MASK[63] = ~CASTLE_WHITE_EAST;
+        CASTLING_MASK[56] = ~CASTLE_WHITE_WEST;
+        CASTLING_MASK[4] = ~(CASTLE_BLACK_EAST | CASTLE_BLACK_WEST); //Black king
+        CASTLING_MASK[7] = ~CASTLE_BLACK_EAST;
+        CASTLING_MASK[0] = ~CASTLE_BLACK_WEST;
+    }
     
     Player whitePlayer;
     Player blackPlayer;
     Move lastMove; //To keep track of the last move applied to the board.
+    long[] bitboards = new long[16]; //Indexed by piece code
+    long[] colours = new long[2]; //[0] = white pieces, [1] = black pieces
+    Piece[] mailbox = new Piece[64]; //Indexed by square
+    int castling; //Combination of the CASTLE_ flags
+    int enPassant = -1; //Square that can be captured onto en passant
+    boolean whiteToMove = true;
+    int halfMoves; //Moves since the last capture or pawn move
+    int fullMoves = 1; //Number of the move, increased after black moves
+    long key; //Zobrist key, kept up to date as pieces move
+    int[] kings = {64, 64}; //Square of each player's king, or 64 if none
+    //Squares attacked by each player, seeing through the other player's king.
+    //Worked out when first asked for at a position and forgotten whenever a
+    //piece is placed or lifted; bit 0 (white) and bit 1 (black) of
+    //attacksKnown are set while the maps are up to date. Taking back a move
+    //restores the maps from before it.
+    long[] attacks = new long[2];
+    int attacksKnown;
+    //Sum of the packed midgame and endgame values of all pieces, kept up to
+    //date as pieces are placed and lifted, and the game phase, which only
+    //changes as pieces are added, captured or promoted
+    int fitness;
+    int phase;
+    //When set, every evaluation is checked against a full recount
+    static boolean debugEval = false;
+    //Material values used by the static exchange evaluation, indexed by kind
+    static final int[] EXCHANGE_VALUES = BoardEval.defaultValues();
+    private final int[] exchangeGain = new int[32]; //Used by see()
+    private ArrayList<Piece> spares; //Pieces set aside by setFen()
 
     /**
      * Constructor. Calls the initBoard() method to initialize the board.
@@ -28,6 +76,326 @@ public class Board {
     public Board(Board b) {
         this.whitePlayer = new Player(b.getPlayer(true));
         this.blackPlayer = new Player(b.getPlayer(false));
+        //The bitboards are identical, but the mailbox must point at the copies
+        System.arraycopy(b.bitboards, 0, this.bitboards, 0, 16);
+        System.arraycopy(b.colours, 0, this.colours, 0, 2);
+        this.castling = b.castling;
+        this.enPassant = b.enPassant;
+        this.whiteToMove = b.whiteToMove;
+        this.halfMoves = b.halfMoves;
+        this.fullMoves = b.fullMoves;
+        this.key = b.key;
+        this.kings[0] = b.kings[0];
+        this.kings[1] = b.kings[1];
+        this.fitness = b.fitness;
+        this.phase = b.phase;
+        for (Piece p : whitePlayer.getPiecesList()) {
+            mailbox[p.getSquare()] = p;
+        }
+        for (Piece p : blackPlayer.getPiecesList()) {
+            mailbox[p.getSquare()] = p;
+        }
+    }
+
+    /**
+     * Constructor for an empty board, used by fromFen().
+     *
+     * @param whitePlayer The white player, without any pieces.
+     * @param blackPlayer The black player, without any pieces.
+     */
+    private Board(Player whitePlayer, Player blackPlayer) {
+        this.whitePlayer = whitePlayer;
+        this.blackPlayer = blackPlayer;
+    }
+
+    /**
+     * Creates a board from a position in Forsyth-Edwards Notation, eg
+     * "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1". The move
+     * clocks may be left out. The text is read in place, so the only objects
+     * created are the board, its players and its pieces. Kings and rooks that
+     * can no longer castle are marked as having moved.
+     *
+     * @param fen The position.
+     * @return The board.
+     * @throws IllegalArgumentException If the text is not a valid position.
+     */
+    public static Board fromFen(String fen) {
+        Board board = new Board(new Player(true), new Player(false));
+        board.readFen(fen);
+        return board;
+    }
+
+    /**
+     * Sets the board to a position in Forsyth-Edwards Notation, as read by
+     * fromFen(). The pieces of the old position are used again for the new
+     * one where their kinds match, so a board that is set to one position
+     * after another soon stops creating objects. If the text is not a valid
+     * position, the board holds part of it and must be set again before use.
+     *
+     * @param fen The position.
+     * @throws IllegalArgumentException If the text is not a valid position.
+     */
+    public void setFen(String fen) {
+        if (spares == null) {
+            spares = new ArrayList<>();
+        }
+        whitePlayer.removeAll(spares);
+        blackPlayer.removeAll(spares);
+        java.util.Arrays.fill(bitboards, 0);
+        java.util.Arrays.fill(colours, 0);
+        java.util.Arrays.fill(mailbox, null);
+        lastMove = null;
+        castling = 0;
+        enPassant = -1;
+        whiteToMove = true;
+        halfMoves = 0;
+        fullMoves = 1;
+        key = 0;
+        kings[0] = 64;
+        kings[1] = 64;
+        attacksKnown = 0;
+        fitness = 0;
+        phase = 0;
+        readFen(fen);
+    }
+
+    /**
+     * Reads a position in Forsyth-Edwards Notation onto an empty board.
+     *
+     * @param fen The position.
+     * @throws IllegalArgumentException If the text is not a valid position.
+     */
+    private void readFen(String fen) {
+        int i = skipSpaces(fen, 0);
+        int row = 0;
+        int col = 0;
+        for (; i < fen.length() && fen.charAt(i) != ' '; i++) {
+            char c = fen.charAt(i);
+            if (c == '/') {
+                if (col != 8) {
+                    throw badFen(fen, "row " + (row + 1) + " is not 8 squares");
+                }
+                row++;
+                col = 0;
+            } else if (c >= '1' && c <= '8') {
+                col += c - '0';
+            } else {
+                //Upper case is white in FEN, but black on this board
+                //The letters in the order of the kinds, PAWN to KING
+                int kind = "pnbrqk".indexOf(Character.toLowerCase(c)) + 1;
+                if (kind == 0 || row > 7 || col > 7) {
+                    throw badFen(fen, "unexpected '" + c + "' in the placement");
+                }
+                int colour = (Character.isUpperCase(c) ? 0 : Piece.BLACK);
+                addPiece(spare(kind | colour, row, col++));
+            }
+        }
+        if (row != 7 || col != 8) {
+            throw badFen(fen, "the placement is not 8 rows of 8 squares");
+        }
+        i = skipSpaces(fen, i);
+        if (i >= fen.length() || (fen.charAt(i) != 'w' && fen.charAt(i) != 'b')) {
+            throw badFen(fen, "the side to move is not 'w' or 'b'");
+        }
+        whiteToMove = fen.charAt(i++) == 'w';
+        i = skipSpaces(fen, i);
+        //Either "-" alone, or some of "KQkq"
+        int field = i;
+        for (; i < fen.length() && fen.charAt(i) != ' '; i++) {
+            int flag = "KQkq".indexOf(fen.charAt(i)); //In the order of CASTLE_
+            if (flag < 0 && (fen.charAt(i) != '-' || i != field
+                    || (i + 1 < fen.length() && fen.charAt(i + 1) != ' '))) {
+                throw badFen(fen, "unexpected '" + fen.charAt(i) + "' in castling");
+            }
+            castling |= (flag < 0 ? 0 : 1 << flag);
+        }
+        i = skipSpaces(fen, i);
+        if (i < fen.length() && fen.charAt(i) != '-') {
+            int c = (i + 1 < fen.length() ? fen.charAt(i) - 'a' : -1);
+            int r = (i + 1 < fen.length() ? '8' - fen.charAt(i + 1) : -1);
+            if ((c | r) >>> 3 != 0) {
+                throw badFen(fen, "the en passant square is not a square");
+            }
+            enPassant = r * 8 + c;
+            i += 2;
+        } else {
+            i++;
+        }
+        i = skipSpaces(fen, i);
+        if (i < fen.length()) {
+            halfMoves = readNumber(fen, i);
+            i = skipSpaces(fen, fen.indexOf(' ', i) < 0 ? fen.length()
+                    : fen.indexOf(' ', i));
+            if (i < fen.length()) {
+                fullMoves = readNumber(fen, i);
+            }
+        }
+        //A right is only kept for a king and rook on their starting squares
+        for (int flag = 0; flag < 4; flag++) {
+            int home = (flag < 2 ? 56 : 0); //Square of the West rook
+            int us = (flag < 2 ? 0 : Piece.BLACK);
+            int rook = home + ((flag & 1) == 0 ? 7 : 0);
+            if (!holds(home + 4, Piece.KING | us)
+                    || !holds(rook, Piece.ROOK | us)) {
+                castling &= ~(1 << flag);
+            }
+        }
+        //Only pieces that can still castle are unmoved
+        for (Piece p : whitePlayer.getPiecesList()) {
+            p.hasMoved |= lostCastling(p);
+        }
+        for (Piece p : blackPlayer.getPiecesList()) {
+            p.hasMoved |= lostCastling(p);
+        }
+        key = Zobrist.key(this);
+    }
+
+    /**
+     * Returns a piece for a square of the board, taking one of the same
+     * kind from the spares left by setFen() if there is one.
+     *
+     * @param code Code of the piece.
+     * @param row Row coordinate.
+     * @param col Column coordinate.
+     * @return
+     */
+    private Piece spare(int code, int row, int col) {
+        for (int i = (spares == null ? 0 : spares.size()) - 1; i >= 0; i--) {
+            Piece p = spares.get(i);
+            if (p.getCode() == code) {
+                spares.set(i, spares.get(spares.size() - 1));
+                spares.remove(spares.size() - 1);
+                p.reset(row, col);
+                return p;
+            }
+        }
+        return Piece.create(code, row, col);
+    }
+
+    /**
+     * Writes the position in Forsyth-Edwards Notation, as read by fromFen().
+     *
+     * @return
+     */
+    public String toFen() {
+        StringBuilder fen = new StringBuilder(90);
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                Piece p = mailbox[row * 8 + col];
+                if (p == null) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                //Upper case is white in FEN, and N the knight
+                char c = " PNBRQK".charAt(p.getCode() & 7);
+                fen.append(p.isWhite() ? c : Character.toLowerCase(c));
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            fen.append(row < 7 ? '/' : ' ');
+        }
+        fen.append(whiteToMove ? "w " : "b ");
+        for (int flag = 0; flag < 4; flag++) {
+            if ((castling & (1 << flag)) != 0) {
+                fen.append("KQkq".charAt(flag));
+            }
+        }
+        if (castling == 0) {
+            fen.append('-');
+        }
+        fen.append(' ');
+        if (enPassant < 0) {
+            fen.append('-');
+        } else {
+            fen.append((char) ('a' + (enPassant & 7)))
+                    .append((char) ('8' - (enPassant >> 3)));
+        }
+        return fen.append(' ').append(halfMoves).append(' ').append(fullMoves)
+                .toString();
+    }
+
+    /**
+     * Returns whether a square holds the given piece.
+     *
+     * @param sq The square.
+     * @param code Code of the piece.
+     * @return
+     */
+    private boolean holds(int sq, int code) {
+        return mailbox[sq] != null && mailbox[sq].getCode() == code;
+    }
+
+    /**
+     * Returns whether a piece is a king or rook that can no longer castle.
+     *
+     * @param p The piece.
+     * @return
+     */
+    private boolean lostCastling(Piece p) {
+        int kind = p.getCode() & 7;
+        int rights = castling & (p.isWhite() ? CASTLE_WHITE_EAST | CASTLE_WHITE_WEST
+                : CASTLE_BLACK_EAST | CASTLE_BLACK_WEST);
+        int home = (p.isWhite() ? 56 : 0); //Square of the West rook
+        if (kind == Piece.KING) {
+            return rights == 0 || p.getSquare() != home + 4;
+        } else if (kind == Piece.ROOK) {
+            return !(p.getSquare() == home
+                    && (rights & (CASTLE_WHITE_WEST | CASTLE_BLACK_WEST)) != 0)
+                    && !(p.getSquare() == home + 7
+                    && (rights & (CASTLE_WHITE_EAST | CASTLE_BLACK_EAST)) != 0);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the index of the first character at or after i that is not a
+     * space.
+     *
+     * @param text
+     * @param i
+     * @return
+     */
+    private static int skipSpaces(String text, int i) {
+        while (i < text.length() && text.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Reads a number from a position in FEN.
+     *
+     * @param fen The position.
+     * @param i Index of the first digit.
+     * @return
+     */
+    private static int readNumber(String fen, int i) {
+        int n = 0;
+        int start = i;
+        for (; i < fen.length() && fen.charAt(i) != ' '; i++) {
+            if (fen.charAt(i) < '0' || fen.charAt(i) > '9' || i - start > 8) {
+                throw badFen(fen, "a move clock is not a number");
+            }
+            n = n * 10 + fen.charAt(i) - '0';
+        }
+        return n;
+    }
+
+    /**
+     * Creates the exception thrown for a position that cannot be read.
+     *
+     * @param fen The position.
+     * @param reason What is wrong with it.
+     * @return
+     */
+    private static IllegalArgumentException badFen(String fen, String reason) {
+        return new IllegalArgumentException("Invalid FEN (" + reason + "): " + fen);
     }
 
     /**
@@ -38,14 +406,10 @@ public class Board {
      * @return Piece object at the given location.
      */
     public Piece getPieceAt(int row, int col) {
-        //Check if whitePlayer player has a piece at the location
-        Piece p = whitePlayer.getPieceAt(row, col);
-        if (p == null) { //If whitePlayer player doesn't have a piece at the location
-            //Check if blackPlayer player has a piece at the location
-            p = blackPlayer.getPieceAt(row, col);
-            return p;
+        if ((row | col) >>> 3 != 0) { //Off the board
+            return null;
         }
-        return p;
+        return mailbox[row * 8 + col];
     }
 
     /**
@@ -67,15 +431,30 @@ public class Board {
      * @return Boolean which indicates whether the space is occupied.
      */
     public Boolean occupied(int row, int col) {
-        Piece p = whitePlayer.getPieceAt(row, col);
-        if (p == null) { //If there is not a white piece at the location
-            p = blackPlayer.getPieceAt(row, col);
-            //If there is neither a white nor black piece at the location
-            if (p == null) {
-                return false;
-            }
+        if ((row | col) >>> 3 != 0) { //Off the board
+            return false;
         }
-        return true;
+        return ((colours[0] | colours[1]) >>> (row * 8 + col) & 1L) != 0;
+    }
+
+    /**
+     * Returns a bitboard of all occupied squares.
+     *
+     * @return
+     */
+    public long occupiedSquares() {
+        return colours[0] | colours[1];
+    }
+
+    /**
+     * Adds a piece to the board and to its player's list of pieces.
+     *
+     * @param p Piece to be added.
+     */
+    public void addPiece(Piece p) {
+        getPlayer(p.isWhite()).addPiece(p);
+        place(p);
+        phase += BoardEval.PHASE[p.getCode() & 7];
     }
 
     /**
@@ -89,56 +468,509 @@ public class Board {
         } else {
             blackPlayer.removePiece(p);
         }
+        lift(p);
+        phase -= BoardEval.PHASE[p.getCode() & 7];
+    }
+
+    /**
+     * Sets the bits and mailbox entry for a piece at its current position.
+     *
+     * @param p Piece being placed.
+     */
+    private void place(Piece p) {
+        int sq = p.getSquare();
+        long b = 1L << sq;
+        bitboards[p.getCode()] |= b;
+        colours[p.isWhite() ? 0 : 1] |= b;
+        mailbox[sq] = p;
+        if ((p.getCode() & 7) == Piece.KING) {
+            kings[p.isWhite() ? 0 : 1] = sq;
+        }
+        attacksKnown = 0;
+        key ^= Zobrist.PIECES[p.getCode()][sq];
+        fitness += BoardEval.eval(p);
+    }
+
+    /**
+     * Clears the bits and mailbox entry for a piece at its current position.
+     *
+     * @param p Piece being lifted.
+     */
+    private void lift(Piece p) {
+        int sq = p.getSquare();
+        long b = 1L << sq;
+        bitboards[p.getCode()] &= ~b;
+        colours[p.isWhite() ? 0 : 1] &= ~b;
+        if (mailbox[sq] == p) {
+            mailbox[sq] = null;
+        }
+        if ((p.getCode() & 7) == Piece.KING) {
+            kings[p.isWhite() ? 0 : 1] = 64;
+        }
+        attacksKnown = 0;
+        key ^= Zobrist.PIECES[p.getCode()][sq];
+        fitness -= BoardEval.eval(p);
+    }
+
+    /**
+     * Moves a piece to a new (empty) location, keeping the bitboards in sync.
+     *
+     * @param p Piece being moved.
+     * @param row New row coordinate.
+     * @param col New column coordinate.
+     */
+    private void relocate(Piece p, int row, int col) {
+        lift(p);
+        p.setPosition(row, col);
+        place(p);
+    }
+
+    /**
+     * Returns the square of a player's king.
+     *
+     * @param white Boolean indicating which player's king to find.
+     * @return Square index of the king, or 64 if there is no king on the board.
+     */
+    public int kingSquare(boolean white) {
+        return kings[white ? 0 : 1];
+    }
+
+    /**
+     * Returns the squares attacked by a player. The other player's king does
+     * not block the attacks, so the squares behind it on a checking line are
+     * included: these are the squares that king cannot move to. The map is
+     * worked out once per position and then looked up.
+     *
+     * @param byWhite Boolean indicating which player's attacks to return.
+     * @return Bitboard of the attacked squares.
+     */
+    public long attackedSquares(boolean byWhite) {
+        int side = byWhite ? 0 : 1;
+        if ((attacksKnown & (1 << side)) == 0) {
+            attacks[side] = findAttacks(byWhite);
+            attacksKnown |= 1 << side;
+        }
+        return attacks[side];
+    }
+
+    /**
+     * Works out the squares attacked by a player, for attackedSquares().
+     *
+     * @param byWhite Boolean indicating which player's attacks to find.
+     * @return
+     */
+    private long findAttacks(boolean byWhite) {
+        int them = byWhite ? 0 : Piece.BLACK;
+        long occupied = (colours[0] | colours[1])
+                & ~bitboards[Piece.KING | (byWhite ? Piece.BLACK : 0)];
+        long map = Bitboard.pawnAttacks(bitboards[Piece.PAWN | them], byWhite);
+        long pieces = bitboards[Piece.KNIGHT | them];
+        while (pieces != 0) {
+            map |= Bitboard.KNIGHT_ATTACKS[Long.numberOfTrailingZeros(pieces)];
+            pieces &= pieces - 1;
+        }
+        long queens = bitboards[Piece.QUEEN | them];
+        pieces = bitboards[Piece.BISHOP | them] | queens;
+        while (pieces != 0) {
+            int sq = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            map |= Bitboard.bishopAttacks(occupied, sq);
+        }
+        pieces = bitboards[Piece.ROOK | them] | queens;
+        while (pieces != 0) {
+            int sq = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            map |= Bitboard.rookAttacks(occupied, sq);
+        }
+        int king = kings[byWhite ? 0 : 1];
+        return (king < 64 ? map | Bitboard.KING_ATTACKS[king] : map);
+    }
+
+    /**
+     * Checks whether a square is attacked by any piece of the given player.
+     *
+     * @param sq Square index being tested.
+     * @param byWhite Boolean indicating which player's attacks to test for.
+     * @return True if the square is attacked.
+     */
+    public boolean isAttacked(int sq, boolean byWhite) {
+        int them = byWhite ? 0 : Piece.BLACK;
+        if ((Bitboard.KNIGHT_ATTACKS[sq] & bitboards[Piece.KNIGHT | them]) != 0
+                || (Bitboard.KING_ATTACKS[sq] & bitboards[Piece.KING | them]) != 0
+                //An enemy pawn attacks sq if our pawn on sq would attack it
+                || (Bitboard.PAWN_ATTACKS[byWhite ? 1 : 0][sq]
+                & bitboards[Piece.PAWN | them]) != 0) {
+            return true;
+        }
+        long occupied = colours[0] | colours[1];
+        long queens = bitboards[Piece.QUEEN | them];
+        return (Bitboard.bishopAttacks(occupied, sq)
+                & (bitboards[Piece.BISHOP | them] | queens)) != 0
+                || (Bitboard.rookAttacks(occupied, sq)
+                & (bitboards[Piece.ROOK | them] | queens)) != 0;
+    }
+
+    /**
+     * Checks whether a player's king is attacked. If the other player's attack
+     * map is already known, the king's square is looked up in it; otherwise
+     * only the king's square is tested, which is cheaper than working out the
+     * whole map for one square.
+     *
+     * @param white Boolean indicating which player to check.
+     * @return True if the player is in check.
+     */
+    public boolean inCheck(boolean white) {
+        int sq = kings[white ? 0 : 1];
+        if (sq == 64) {
+            return false;
+        }
+        if ((attacksKnown & (white ? 2 : 1)) != 0) {
+            return (attacks[white ? 1 : 0] & (1L << sq)) != 0;
+        }
+        return isAttacked(sq, !white);
+    }
+
+    /**
+     * Returns the pieces of both players that attack a square, seeing through
+     * any pieces not in the given occupancy (pieces already exchanged off).
+     *
+     * @param sq Square index being tested.
+     * @param occupied Bitboard of the squares still occupied.
+     * @return Bitboard of the attacking pieces.
+     */
+    long attackersTo(int sq, long occupied) {
+        long bishops = bitboards[Piece.BISHOP] | bitboards[Piece.BISHOP | Piece.BLACK]
+                | bitboards[Piece.QUEEN] | bitboards[Piece.QUEEN | Piece.BLACK];
+        long rooks = bitboards[Piece.ROOK] | bitboards[Piece.ROOK | Piece.BLACK]
+                | bitboards[Piece.QUEEN] | bitboards[Piece.QUEEN | Piece.BLACK];
+        return ((Bitboard.KNIGHT_ATTACKS[sq]
+                & (bitboards[Piece.KNIGHT] | bitboards[Piece.KNIGHT | Piece.BLACK]))
+                | (Bitboard.KING_ATTACKS[sq]
+                & (bitboards[Piece.KING] | bitboards[Piece.KING | Piece.BLACK]))
+                | (Bitboard.PAWN_ATTACKS[1][sq] & bitboards[Piece.PAWN])
+                | (Bitboard.PAWN_ATTACKS[0][sq] & bitboards[Piece.PAWN | Piece.BLACK])
+                | (Bitboard.bishopAttacks(occupied, sq) & bishops)
+                | (Bitboard.rookAttacks(occupied, sq) & rooks)) & occupied;
+    }
+
+    /**
+     * Static exchange evaluation: the material won or lost by a capture once
+     * every recapture on the destination square has been played out, each
+     * player recapturing with their least valuable piece and free to stop
+     * when continuing would lose material. The board is not changed.
+     *
+     * @param move The packed capture (or promotion) to evaluate.
+     * @return Material gained by the moving player, in EXCHANGE_VALUES units.
+     */
+    public int see(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int[] gain = exchangeGain;
+        long occupied = (colours[0] | colours[1]) ^ (1L << from);
+        int attackerValue = EXCHANGE_VALUES[Move.piece(move) & 7];
+        gain[0] = EXCHANGE_VALUES[Move.captured(move)];
+        if (Move.promotion(move) != 0) {
+            attackerValue = EXCHANGE_VALUES[Move.promotion(move)];
+            gain[0] += attackerValue - EXCHANGE_VALUES[Piece.PAWN];
+        }
+        if ((move & Move.EN_PASSANT) != 0) {
+            occupied ^= 1L << ((from & ~7) | (to & 7));
+        }
+        int side = (Move.piece(move) & Piece.BLACK) ^ Piece.BLACK; //Recapturing player
+        int d = 0;
+        long attackers = attackersTo(to, occupied);
+        while (d < gain.length - 1) {
+            d++;
+            //Gain if the piece that just captured is taken in turn
+            gain[d] = attackerValue - gain[d - 1];
+            long next = 0;
+            int kind = Piece.PAWN;
+            for (; kind <= Piece.KING; kind++) {
+                next = attackers & bitboards[kind | side];
+                if (next != 0) {
+                    break;
+                }
+            }
+            if (next == 0) {
+                break;
+            }
+            occupied ^= Long.lowestOneBit(next);
+            attackers = attackersTo(to, occupied); //Reveals x-ray attackers
+            attackerValue = EXCHANGE_VALUES[kind];
+            side ^= Piece.BLACK;
+        }
+        //Each player stops the exchange when continuing would lose material
+        while (--d > 0) {
+            gain[d - 1] = -Math.max(-gain[d - 1], gain[d]);
+        }
+        return gain[0];
     }
 
     /**
      * Method that handles the movement (and capture) of pieces. This method
      * does not check for validity of a move, it is assumed that this has
-     * already been assured.
+     * already been assured. Castling may be given either as the king moving
+     * two spaces, or as the rook moving onto its own king.
      *
      * @param nextMove Move object containing the piece being moved, and the
      * coordinates of the destination.
      */
     public void move(Move nextMove) {
-        if (this.lastMove == null) {
-            this.lastMove = new Move(nextMove);
-        }
-        Piece p = getPieceAt(nextMove.getRow(), nextMove.getCol());
-        int destX = nextMove.getDestRow();
-        int destY = nextMove.getDestCol();
-        //Check for En Passant
-        if ((p.getType() == 'p' || p.getType() == 'P') && occupied(p.getRow(), destY)
-                && p.getCol() != destY) {
-            if (p.isWhite() != getPieceAt(p.getRow(), destY).isWhite()) {
-                capturePiece(getPieceAt(p.getRow(), destY));
-                p.setPosition(destX, destY); //Set p's new position
-            }
-        } //Check for castling
-        else if ((p.getType() == 'r' || p.getType() == 'R') && !p.hasMoved
-                && occupied(destX, destY) && destX == p.getRow()) {
-            if ((getPieceAt(destX, destY).getType() == 'k'
-                    || getPieceAt(destX, destY).getType() == 'K')
-                    && !getPieceAt(destX, destY).hasMoved) {
-                //Castling with West rook
-                if (p.getCol() < getPieceAt(destX, destY).getCol()) {
-                    p.setPosition(destX, destY - 1); //Set p's new position
-                    //Call move on the King
-                    move(new Move(getPieceAt(destX, destY), destX, destY - 2));
-                } //Castling with East rook
-                else if (p.getCol() > getPieceAt(destX, destY).getCol()) {
-                    p.setPosition(destX, destY + 1); //Set p's new position
-                    //Call move on the King
-                    move(new Move(getPieceAt(destX, destY), destX, destY + 2));
-                }
-            }
-        } //Check for capture 
-        if (occupied(destX, destY)) {
-            capturePiece(getPieceAt(destX, destY));
-            p.setPosition(destX, destY); //Set p's new position  
+        makeMove(nextMove, new UndoInfo());
+    }
+
+    /**
+     * Applies a move to this board in place, returning the information needed
+     * to take it back with unmakeMove().
+     *
+     * @param m The move being applied.
+     * @return Undo information for the move.
+     */
+    public UndoInfo makeMove(Move m) {
+        UndoInfo undo = new UndoInfo();
+        makeMove(m, undo);
+        return undo;
+    }
+
+    /**
+     * Applies a move to this board in place, recording the information needed
+     * to take it back in the given undo object.
+     *
+     * @param m The move being applied.
+     * @param undo Undo object to be filled in.
+     */
+    public void makeMove(Move m, UndoInfo undo) {
+        undo.lastMove = lastMove;
+        makeMove(m.pack(this), undo);
+        lastMove = m;
+    }
+
+    /**
+     * Takes back a move applied with makeMove(), restoring captured pieces,
+     * castling rights, the en passant square and the pieces' move counts.
+     *
+     * @param m The move being taken back.
+     * @param undo Undo object filled in when the move was applied.
+     */
+    public void unmakeMove(Move m, UndoInfo undo) {
+        unmakeMove(undo.move, undo);
+        lastMove = undo.lastMove;
+    }
+
+    /**
+     * Applies a packed move to this board in place, recording the information
+     * needed to take it back in the given undo object.
+     *
+     * @param move The packed move being applied.
+     * @param undo Undo object to be filled in.
+     */
+    public void makeMove(int move, UndoInfo undo) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        Piece p = mailbox[from];
+        undo.move = move;
+        undo.piece = p;
+        undo.from = from;
+        undo.hasMoved = p.hasMoved;
+        undo.rook = null;
+        undo.promoted = null;
+        undo.castling = castling;
+        undo.enPassant = enPassant;
+        undo.halfMoves = halfMoves;
+        undo.key = key;
+        undo.whiteAttacks = attacks[0];
+        undo.blackAttacks = attacks[1];
+        undo.attacksKnown = attacksKnown;
+        if (enPassant >= 0) {
+            key ^= Zobrist.EN_PASSANT[enPassant & 7];
+            enPassant = -1;
+        }
+        Piece target = mailbox[to];
+        if ((move & Move.EN_PASSANT) != 0) {
+            //The captured pawn is beside the moving pawn
+            target = mailbox[(from & ~7) | (to & 7)];
+        } else if ((move & Move.DOUBLE_STEP) != 0) {
+            enPassant = (from + to) >> 1;
+            key ^= Zobrist.EN_PASSANT[enPassant & 7];
+        } else if ((move & Move.CASTLE) != 0) {
+            //Move the rook to the space the king passes over
+            Piece rook = mailbox[to > from ? from + 3 : from - 4];
+            undo.rook = rook;
+            undo.rookFrom = rook.getSquare();
+            undo.rookHasMoved = rook.hasMoved;
+            relocate(rook, to >> 3, ((from + to) >> 1) & 7);
+        }
+        undo.captured = target;
+        if (target != null) { //Check for capture
+            capturePiece(target);
+        }
+        halfMoves = (target != null || (p.getCode() & 7) == Piece.PAWN ? 0
+                : halfMoves + 1);
+        fullMoves += (whiteToMove ? 0 : 1);
+        key ^= Zobrist.CASTLING[castling];
+        castling &= CASTLING_MASK[from] & CASTLING_MASK[to];
+        key ^= Zobrist.CASTLING[castling] ^ Zobrist.BLACK_TO_MOVE;
+        whiteToMove = !whiteToMove;
+        relocate(p, to >> 3, to & 7); //Set p's new position
+        if (Move.promotion(move) != 0) {
+            undo.promoted = promotedPiece(undo, Move.promotion(move)
+                    | (p.getCode() & Piece.BLACK), to);
+            replacePiece(p, undo.promoted);
+        }
+    }
+
+    /**
+     * Returns the piece a pawn is promoted to, reusing the one the undo object
+     * holds from an earlier promotion to the same kind, so that the search
+     * does not create a piece for every promotion it tries.
+     *
+     * @param undo Undo object of the promotion.
+     * @param code Code of the piece the pawn is promoted to.
+     * @param sq Square of the promotion.
+     * @return
+     */
+    private static Piece promotedPiece(UndoInfo undo, int code, int sq) {
+        if (undo.promotions == null) {
+            undo.promotions = new Piece[16];
+        }
+        Piece q = undo.promotions[code];
+        if (q == null) {
+            q = Piece.create(code, sq >> 3, sq & 7);
+            undo.promotions[code] = q;
         } else {
-            p.setPosition(destX, destY); //Set p's new position 
+            q.reset(sq >> 3, sq & 7);
+        }
+        return q;
+    }
+
+    /**
+     * Takes back a packed move applied with makeMove(), restoring captured
+     * pieces, castling rights, the en passant square and the pieces' move
+     * counts. Everything needed is held by the undo object.
+     *
+     * @param move The packed move being taken back.
+     * @param undo Undo object filled in when the move was applied.
+     */
+    public void unmakeMove(int move, UndoInfo undo) {
+        Piece p = undo.piece;
+        if (undo.promoted != null) {
+            replacePiece(undo.promoted, p);
+        }
+        restore(p, undo.from, undo.hasMoved);
+        if (undo.rook != null) {
+            restore(undo.rook, undo.rookFrom, undo.rookHasMoved);
         }
-        lastMove = nextMove;
+        if (undo.captured != null) {
+            getPlayer(undo.captured.isWhite()).restorePiece(undo.captured);
+            place(undo.captured);
+            phase += BoardEval.PHASE[undo.captured.getCode() & 7];
+        }
+        castling = undo.castling;
+        enPassant = undo.enPassant;
+        halfMoves = undo.halfMoves;
+        whiteToMove = !whiteToMove;
+        fullMoves -= (whiteToMove ? 0 : 1);
+        key = undo.key;
+        attacks[0] = undo.whiteAttacks;
+        attacks[1] = undo.blackAttacks;
+        attacksKnown = undo.attacksKnown;
+    }
+
+    /**
+     * Moves a piece back to the location it was moved from.
+     *
+     * @param p Piece being moved back.
+     * @param sq Square the piece was moved from.
+     * @param hasMoved Whether the piece had moved before.
+     */
+    private void restore(Piece p, int sq, boolean hasMoved) {
+        lift(p);
+        p.undoPosition(sq >> 3, sq & 7, hasMoved);
+        place(p);
+    }
+
+    /**
+     * Replaces a piece on the board with another piece of the same colour on
+     * the same space (used for pawn promotion).
+     *
+     * @param p The piece being replaced.
+     * @param q The new piece.
+     */
+    public void replacePiece(Piece p, Piece q) {
+        ArrayList<Piece> pieces = getPlayer(p.isWhite()).getPiecesList();
+        lift(p);
+        pieces.set(pieces.indexOf(p), q);
+        place(q);
+        phase += BoardEval.PHASE[q.getCode() & 7]
+                - BoardEval.PHASE[p.getCode() & 7];
+    }
+
+    /**
+     * Returns the square that can be captured onto en passant, or -1 if the
+     * last move was not a pawn moving two spaces.
+     *
+     * @return
+     */
+    public int getEnPassant() {
+        return this.enPassant;
+    }
+
+    /**
+     * Returns whether it is the white player's turn to move.
+     *
+     * @return
+     */
+    public boolean isWhiteToMove() {
+        return this.whiteToMove;
+    }
+
+    /**
+     * Sets which player's turn it is to move.
+     *
+     * @param white True for the white player.
+     */
+    public void setWhiteToMove(boolean white) {
+        if (white != whiteToMove) {
+            whiteToMove = white;
+            key ^= Zobrist.BLACK_TO_MOVE;
+        }
+    }
+
+    /**
+     * Returns the number of moves since the last capture or pawn move.
+     *
+     * @return
+     */
+    public int getHalfMoves() {
+        return this.halfMoves;
+    }
+
+    /**
+     * Returns the number of the move, starting at 1 and increased after each
+     * move of the black player.
+     *
+     * @return
+     */
+    public int getFullMoves() {
+        return this.fullMoves;
+    }
+
+    /**
+     * Returns the Zobrist key of the position.
+     *
+     * @return
+     */
+    public long getKey() {
+        return this.key;
+    }
+
+    /**
+     * Returns the castling rights, as a combination of the CASTLE_ flags.
+     *
+     * @return
+     */
+    public int getCastling() {
+        return this.castling;
     }
 
     /**
@@ -151,16 +983,25 @@ public class Board {
      * @return Boolean indicating whether the move will put the player in check.
      */
     public boolean safeMove(Piece p, int destX, int destY) {
-        Move m = new Move(p, destX, destY);
-        Board testBoard = new Board(this);
-        testBoard.move(m); //Process the move on a test board
+        return safeMove(new Move(p, destX, destY));
+    }
+
+    /**
+     * Tests a move to see if it is safe, ie will not put the player in check,
+     * or will move them out of check.
+     *
+     * @param m The move being tested.
+     * @return Boolean indicating whether the move will put the player in check.
+     */
+    public boolean safeMove(Move m) {
+        boolean white = getPieceAt(m.getRow(), m.getCol()).isWhite();
+        int move = m.pack(this);
+        UndoInfo undo = new UndoInfo();
+        makeMove(move, undo); //Process the move on this board
         //Then check if it puts the king in check
-        if (testBoard.getPlayer(p.isWhite()).inCheck(
-                (p.isWhite() ? testBoard.getPlayer(false).getPiecesList()
-                        : testBoard.getPlayer(true).getPiecesList()), testBoard)) {
-            return false; //This move will put the player in check
-        }
-        return true; //This move will not put the player in check
+        boolean safe = !inCheck(white);
+        unmakeMove(move, undo);
+        return safe;
     }
 
     /**
@@ -170,8 +1011,9 @@ public class Board {
      * @return Boolean indicating whether a checkmate has occurred.
      */
     public boolean checkmate(boolean whitePlayer) {
-        //If there are no next possible boards, then checkmate has occured.
-        return getNextBoards(whitePlayer).isEmpty();
+        //If there are no safe moves, then checkmate has occured.
+        IntMoveList moves = new IntMoveList();
+        return MoveGenerator.generateLegalMoves(this, whitePlayer, moves) == 0;
     }
 
     /**
@@ -183,20 +1025,12 @@ public class Board {
      */
     public ArrayList<Board> getNextBoards(boolean white) {
         ArrayList<Board> nextBoards = new ArrayList<>();
-        for (Piece p : getPlayer(white).getPiecesList()) {
-            for (int x = 0; x < 8; x++) {
-                for (int y = 0; y < 8; y++) {
-                    //Check that move is valid and safe
-                    if (p.isValid(x, y, this)) {
-                        if (safeMove(p, x, y)) {
-                            Board b = new Board(this); //Make a copy of the current board
-                            //Apply the move
-                            b.move(new Move(b.getPieceAt(p.getRow(), p.getCol()), x, y));
-                            nextBoards.add(b);
-                        }
-                    }
-                }
-            }
+        IntMoveList moves = new IntMoveList();
+        MoveGenerator.generateLegalMoves(this, white, moves);
+        for (int i = 0; i < moves.size(); i++) {
+            Board b = new Board(this); //Make a copy of the current board
+            b.move(new Move(moves.get(i))); //Apply the move
+            nextBoards.add(b);
         }
         return nextBoards;
     }
@@ -258,24 +1092,76 @@ public class Board {
     }
 
     /**
-     * Board evaluation function.
+     * Board evaluation function. The packed midgame and endgame fitness and
+     * the game phase are kept up to date as pieces are placed and lifted, so
+     * no pieces are visited here - the two halves are only blended by the phase.
      *
      * @param white Boolean indicating which player the board is to be evaluated
      * for.
      * @return Fitness of the board.
      */
     public int boardEval(boolean white) {
-        int fitness = 0;
-        for (Piece p : whitePlayer.getPiecesList()) {
-            fitness += BoardEval.eval(p);
+        int total = BoardEval.taper(fitness, phase);
+        if (debugEval && (total != recountEval() || phase != recountPhase())) {
+            throw new IllegalStateException("Incremental fitness " + total
+                    + " (phase " + phase + ") differs from recounted fitness "
+                    + recountEval() + " (phase " + recountPhase() + ")");
         }
-        for (Piece p : blackPlayer.getPiecesList()) {
-            fitness += BoardEval.eval(p);
+        return (white ? total : -total); //Get negative for black player
+    }
+
+    /**
+     * Computes the fitness of the board (for the white player) from scratch,
+     * by evaluating every piece.
+     *
+     * @return Fitness of the board.
+     */
+    public int recountEval() {
+        int total = 0;
+        for (Player player : new Player[]{whitePlayer, blackPlayer}) {
+            for (Piece p : player.getPiecesList()) {
+                total += BoardEval.eval(p);
+            }
         }
-        if (!white) { //Get negative for black player
-            fitness *= -1;
+        return BoardEval.taper(total, recountPhase());
+    }
+
+    /**
+     * Computes the game phase from scratch.
+     *
+     * @return
+     */
+    private int recountPhase() {
+        int total = 0;
+        for (Player player : new Player[]{whitePlayer, blackPlayer}) {
+            for (Piece p : player.getPiecesList()) {
+                total += BoardEval.PHASE[p.getCode() & 7];
+            }
         }
-        return fitness;
+        return total;
+    }
+
+    /**
+     * Recounts the fitness of the board, eg after new evaluation weights have
+     * been loaded.
+     */
+    public void refreshEval() {
+        fitness = 0;
+        for (Player player : new Player[]{whitePlayer, blackPlayer}) {
+            for (Piece p : player.getPiecesList()) {
+                fitness += BoardEval.eval(p);
+            }
+        }
+    }
+
+    /**
+     * Switches checking of the incremental fitness against a full recount on
+     * or off.
+     *
+     * @param debug
+     */
+    public static void setDebugEval(boolean debug) {
+        debugEval = debug;
     }
 
     /**
@@ -283,45 +1169,77 @@ public class Board {
      */
     public void initBoard() {
         for (int i = 0; i < 8; i++) {
-            whitePlayer.addPiece(new Pawn(true, 'p', 6, i));
-            blackPlayer.addPiece(new Pawn(false, 'P', 1, i));
+            addPiece(new Pawn(true, 'p', 6, i));
+            addPiece(new Pawn(false, 'P', 1, i));
         }
         int x, y;
         x = 7;
         y = 0;
-        whitePlayer.addPiece(new Rook(true, 'r', x, y)); //White rooks
+        addPiece(new Rook(true, 'r', x, y)); //White rooks
         y = 7;
-        whitePlayer.addPiece(new Rook(true, 'r', x, y));
+        addPiece(new Rook(true, 'r', x, y));
         y = 1;
-        whitePlayer.addPiece(new Knight(true, 'h', x, y)); //White knights
+        addPiece(new Knight(true, 'h', x, y)); //White knights
         y = 6;
-        whitePlayer.addPiece(new Knight(true, 'h', x, y));
+        addPiece(new Knight(true, 'h', x, y));
         y = 2;
-        whitePlayer.addPiece(new Bishop(true, 'b', x, y)); //White bishops
+        addPiece(new Bishop(true, 'b', x, y)); //White bishops
         y = 5;
-        whitePlayer.addPiece(new Bishop(true, 'b', x, y));
+        addPiece(new Bishop(true, 'b', x, y));
         y = 3;
-        whitePlayer.addPiece(new Queen(true, 'q', x, y)); //White queen
+        addPiece(new Queen(true, 'q', x, y)); //White queen
         y = 4;
-        whitePlayer.addPiece(new King(true, 'k', x, y)); //White king
+        addPiece(new King(true, 'k', x, y)); //White king
 
         x = 0;
         y = 0;
-        blackPlayer.addPiece(new Rook(false, 'R', x, y)); //Black rooks
+        addPiece(new Rook(false, 'R', x, y)); //Black rooks
         y = 7;
-        blackPlayer.addPiece(new Rook(false, 'R', x, y));
+        addPiece(new Rook(false, 'R', x, y));
         y = 1;
-        blackPlayer.addPiece(new Knight(false, 'H', x, y)); //Black knights
+        addPiece(new Knight(false, 'H', x, y)); //Black knights
         y = 6;
-        blackPlayer.addPiece(new Knight(false, 'H', x, y));
+        addPiece(new Knight(false, 'H', x, y));
         y = 2;
-        blackPlayer.addPiece(new Bishop(false, 'B', x, y)); //Black bishops
+        addPiece(new Bishop(false, 'B', x, y)); //Black bishops
         y = 5;
-        blackPlayer.addPiece(new Bishop(false, 'B', x, y));
+        addPiece(new Bishop(false, 'B', x, y));
         y = 3;
-        blackPlayer.addPiece(new Queen(false, 'Q', x, y)); //Black queen
+        addPiece(new Queen(false, 'Q', x, y)); //Black queen
         y = 4;
-        blackPlayer.addPiece(new King(false, 'K', x, y)); //Black king
+        addPiece(new King(false, 'K', x, y)); //Black king
+        initCastling();
+    }
+
+    /**
+     * Sets the castling rights from the pieces on the board - a player may
+     * castle with a rook if neither it nor the king have moved.
+     */
+    public void initCastling() {
+        castling = 0;
+        if (unmoved(7, 4, 'k')) {
+            castling |= (unmoved(7, 7, 'r') ? CASTLE_WHITE_EAST : 0)
+                    | (unmoved(7, 0, 'r') ? CASTLE_WHITE_WEST : 0);
+        }
+        if (unmoved(0, 4, 'K')) {
+            castling |= (unmoved(0, 7, 'R') ? CASTLE_BLACK_EAST : 0)
+                    | (unmoved(0, 0, 'R') ? CASTLE_BLACK_WEST : 0);
+        }
+        key = Zobrist.key(this);
+    }
+
+    /**
+     * Checks whether the given piece is at the given location and has not
+     * moved.
+     *
+     * @param row Row number of the location.
+     * @param col Column number of the location.
+     * @param type Type char of the piece.
+     * @return
+     */
+    private boolean unmoved(int row, int col, char type) {
+        Piece p = getPieceAt(row, col);
+        return p != null && p.getType() == type && !p.hasMoved;
     }
 
     /**
@@ -1,8 +1,18 @@
 package chess;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Scanner;
+
 /* Class containing arrays which have modifying values for each piece, depending 
 on the piece's location on the board. Inspiration taken from - 
-https://medium.freecodecamp.org/simple-chess-ai-step-by-step-1d55a9266977 */
+https://medium.freecodecamp.org/simple-chess-ai-step-by-step-1d55a9266977 
+
+Pawns and kings have separate endgame arrays. The midgame and endgame values 
+are blended by the game phase, which falls from 24 (all knights, bishops, rooks
+and queens on the board) to 0 as those pieces are captured.                 */
 public class BoardEval {
 
     static int pawnValue = 10;
@@ -65,54 +75,241 @@ public class BoardEval {
     {20, 20, 0, 0, 0, 0, 20, 20},
     {20, 30, 10, 0, 0, 10, 30, 20}};
 
+    //Endgame - passed pawns are worth more the further they have advanced
+    static int[][] pawnEndgame = {{0, 0, 0, 0, 0, 0, 0, 0},
+    {80, 80, 80, 80, 80, 80, 80, 80},
+    {50, 50, 50, 50, 50, 50, 50, 50},
+    {30, 30, 30, 30, 30, 30, 30, 30},
+    {20, 20, 20, 20, 20, 20, 20, 20},
+    {10, 10, 10, 10, 10, 10, 10, 10},
+    {10, 10, 10, 10, 10, 10, 10, 10},
+    {0, 0, 0, 0, 0, 0, 0, 0}};
+
+    //Endgame - the king should come out and head for the centre
+    static int[][] kingEndgame = {{-50, -40, -30, -20, -20, -30, -40, -50},
+    {-30, -20, -10, 0, 0, -10, -20, -30},
+    {-30, -10, 20, 30, 30, 20, -10, -30},
+    {-30, -10, 30, 40, 40, 30, -10, -30},
+    {-30, -10, 30, 40, 40, 30, -10, -30},
+    {-30, -10, 20, 30, 30, 20, -10, -30},
+    {-30, -30, 0, 0, 0, 0, -30, -30},
+    {-50, -30, -30, -30, -30, -30, -30, -50}};
+
+    //Contribution of each piece kind to the game phase, indexed by kind
+    static final int[] PHASE = {0, 0, 1, 1, 2, 4, 0};
+    static final int MAX_PHASE = 24;
+
+    //Names of the piece kinds in a weights file, indexed by kind
+    static final String[] NAMES = {"", "pawn", "knight", "bishop", "rook",
+        "queen", "king"};
+
+    //Flattened table of piece values, indexed by (piece code << 6) | square.
+    //Each entry packs the midgame and endgame values into one int (see score),
+    //so both are kept up to date with a single addition. Material is folded
+    //in, and black entries are mirrored and negated.
+    static volatile int[] table = build(defaultValues(), defaultValues(),
+            defaultTables(), defaultEndgameTables());
+
     /**
      * Evaluate using the board evaluation function, which takes static into
-     * account the piece's type and coordinate.
+     * account the piece's type and coordinate. The midgame and endgame values
+     * are packed together, and are read with midgame() and endgame().
      *
      * @param p The piece to be evaluated.
      * @return The value of the piece in regards to the board evaluation
      * function.
      */
     public static int eval(Piece p) {
-        int E = 0;
-        switch (p.getType()) {
-            case 'p': //White pawn
-                E += pawnValue + pawn[p.getRow()][p.getCol()];
-                break;
-            case 'r': //White rook
-                E += rookValue + rook[p.getRow()][p.getCol()];
-                break;
-            case 'b': //White bishop
-                E += bishopValue + bishop[p.getRow()][p.getCol()];
-                break;
-            case 'h': //White knight
-                E += knightValue + knight[p.getRow()][p.getCol()];
-                break;
-            case 'q': //White queen
-                E += queenValue + queen[p.getRow()][p.getCol()];
-                break;
-            case 'k': //White king
-                E += kingValue + king[p.getRow()][p.getCol()];
-                break;
-            case 'P': //Black pawn
-                E += -pawnValue + pawn[7 - p.getRow()][7 - p.getCol()];
-                break;
-            case 'R': //Black rook
-                E += -rookValue + rook[7 - p.getRow()][7 - p.getCol()];
-                break;
-            case 'B': //Black bishop
-                E += -bishopValue + bishop[7 - p.getRow()][7 - p.getCol()];
-                break;
-            case 'H': //Black knight
-                E += -knightValue + knight[7 - p.getRow()][7 - p.getCol()];
-                break;
-            case 'Q': //Black queen
-                E += -queenValue + queen[7 - p.getRow()][7 - p.getCol()];
-                break;
-            case 'K': //Black king
-                E += -kingValue + king[7 - p.getRow()][7 - p.getCol()];
-                break;
+        return table[(p.getCode() << 6) | p.getSquare()];
+    }
+
+    /**
+     * Evaluate a piece code on a square.
+     *
+     * @param code Code of the piece.
+     * @param sq Square index of the piece.
+     * @return The value of the piece in regards to the board evaluation
+     * function.
+     */
+    public static int eval(int code, int sq) {
+        return table[(code << 6) | sq];
+    }
+
+    /**
+     * Packs a midgame and an endgame value into one int. Packed values can be
+     * added and subtracted as plain ints, as long as each half stays within
+     * the range of a short.
+     *
+     * @param midgame Midgame value.
+     * @param endgame Endgame value.
+     * @return
+     */
+    static int score(int midgame, int endgame) {
+        return (midgame << 16) + endgame;
+    }
+
+    /**
+     * Unpacks the midgame value of a packed score.
+     *
+     * @param score Packed score.
+     * @return
+     */
+    static int midgame(int score) {
+        return (score + 0x8000) >> 16; //Undo the borrow from a negative endgame
+    }
+
+    /**
+     * Unpacks the endgame value of a packed score.
+     *
+     * @param score Packed score.
+     * @return
+     */
+    static int endgame(int score) {
+        return (short) score;
+    }
+
+    /**
+     * Blends the midgame and endgame values of a packed score by the game
+     * phase.
+     *
+     * @param score Packed score.
+     * @param phase Game phase, MAX_PHASE when no pieces have been captured.
+     * @return The blended value.
+     */
+    public static int taper(int score, int phase) {
+        if (phase > MAX_PHASE) {
+            phase = MAX_PHASE; //Promotions can push the phase past the start
+        }
+        return (midgame(score) * phase + endgame(score) * (MAX_PHASE - phase))
+                / MAX_PHASE;
+    }
+
+    /**
+     * Returns the built-in material values, indexed by piece kind.
+     *
+     * @return
+     */
+    static int[] defaultValues() {
+        return new int[]{0, pawnValue, knightValue, bishopValue, rookValue,
+            queenValue, kingValue};
+    }
+
+    /**
+     * Returns the built-in tables, indexed by piece kind.
+     *
+     * @return
+     */
+    static int[][][] defaultTables() {
+        return new int[][][]{null, pawn, knight, bishop, rook, queen, king};
+    }
+
+    /**
+     * Returns the built-in endgame tables, indexed by piece kind.
+     *
+     * @return
+     */
+    static int[][][] defaultEndgameTables() {
+        return new int[][][]{null, pawnEndgame, knight, bishop, rook, queen,
+            kingEndgame};
+    }
+
+    /**
+     * Builds a flattened table from the midgame and endgame material values
+     * and 8x8 tables of each piece kind. White pieces score the value plus
+     * the table entry for their location; black pieces score the negative of
+     * that, with the table rotated so that it is read from Black's side of the
+     * board.
+     *
+     * @param values Midgame material values, indexed by piece kind.
+     * @param endgameValues Endgame material values, indexed by piece kind.
+     * @param tables Midgame 8x8 tables, indexed by piece kind.
+     * @param endgameTables Endgame 8x8 tables, indexed by piece kind.
+     * @return The flattened table.
+     */
+    static int[] build(int[] values, int[] endgameValues, int[][][] tables,
+            int[][][] endgameTables) {
+        int[] flat = new int[16 * 64];
+        for (int kind = Piece.PAWN; kind <= Piece.KING; kind++) {
+            for (int sq = 0; sq < 64; sq++) {
+                int row = sq >> 3;
+                int col = sq & 7;
+                flat[(kind << 6) | sq] = score(
+                        values[kind] + tables[kind][row][col],
+                        endgameValues[kind] + endgameTables[kind][row][col]);
+                flat[((kind | Piece.BLACK) << 6) | sq] = -score(
+                        values[kind] + tables[kind][7 - row][7 - col],
+                        endgameValues[kind]
+                        + endgameTables[kind][7 - row][7 - col]);
+            }
+        }
+        return flat;
+    }
+
+    /**
+     * Loads new weights from a file and swaps them in for all later
+     * evaluations. The file lists, for each piece kind, its name (pawn, knight,
+     * bishop, rook, queen or king), its material value and the 64 values of
+     * its table, row 0 first. An endgame value and table are given the same
+     * way, with "_endgame" after the name (eg "king_endgame"); a kind given
+     * without one uses its midgame value and table in the endgame too, so the
+     * order of the entries does not matter. Values are separated by
+     * whitespace and anything after a '#' on a line is ignored. Kinds missing
+     * from the file keep the built-in weights. Boards created before the swap
+     * hold fitness counted with the old weights, and must call
+     * Board.refreshEval().
+     *
+     * @param path The weights file.
+     * @throws IOException If the file cannot be read or is malformed.
+     */
+    public static void load(Path path) throws IOException {
+        int[] values = defaultValues();
+        int[] endgameValues = new int[NAMES.length];
+        boolean[] midgameRead = new boolean[NAMES.length];
+        boolean[] endgameRead = new boolean[NAMES.length];
+        int[][][] tables = defaultTables();
+        int[][][] endgameTables = defaultEndgameTables();
+        StringBuilder text = new StringBuilder();
+        for (String line : Files.readAllLines(path)) {
+            int comment = line.indexOf('#');
+            text.append(comment < 0 ? line : line.substring(0, comment)).append(' ');
+        }
+        Scanner in = new Scanner(text.toString());
+        try {
+            while (in.hasNext()) {
+                String name = in.next().toLowerCase();
+                boolean endgame = name.endsWith("_endgame");
+                int kind = Arrays.asList(NAMES).indexOf(
+                        endgame ? name.substring(0, name.length() - 8) : name);
+                if (kind < 1) {
+                    throw new IOException("Unknown piece kind '" + name
+                            + "' in weights file: " + path);
+                }
+                int value = in.nextInt();
+                int[][] squares = new int[8][8];
+                for (int sq = 0; sq < 64; sq++) {
+                    squares[sq >> 3][sq & 7] = in.nextInt();
+                }
+                if (endgame) {
+                    endgameValues[kind] = value;
+                    endgameRead[kind] = true;
+                    endgameTables[kind] = squares;
+                } else {
+                    values[kind] = value;
+                    midgameRead[kind] = true;
+                    tables[kind] = squares;
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed weights file: " + path, e);
+        }
+        for (int kind = Piece.PAWN; kind <= Piece.KING; kind++) {
+            if (!endgameRead[kind]) {
+                endgameValues[kind] = values[kind];
+                if (midgameRead[kind]) {
+                    endgameTables[kind] = tables[kind];
+                }
+            }
         }
-        return E;
+        table = build(values, endgameValues, tables, endgameTables);
     }
 }
@@ -0,0 +1,911 @@
+package chess;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/* Class representing a search engine: a configuration, a transposition table,
+a search context for each thread and the pool the threads run on. Engines do
+not share any mutable state, so separate games can each search with their own
+engine at the same time. The memory an engine uses is bounded by the size of
+its table plus a fixed amount per thread (about 200 KB for each context). A
+single engine runs one search at a time.
+
+Fitness inside the search is always from the white player's point of view
+(white maximizes, black minimizes), so the results stored in the transposition
+table can be shared by searches for either player. Leaves are not evaluated in
+the middle of an exchange: a quiescence search plays out the captures first,
+so that the search does not stop just before a piece is lost.
+
+With more than one thread, there are two ways of searching in parallel:
+ - Lazy SMP (the default): helper threads search the same position as the main
+   thread, half of them one depth ahead. They only share the transposition
+   table, so each thread finds the others' results there and their searches
+   drift apart. The move is taken from the main thread.
+ - Root split: once the first (best ordered) move at the root has been
+   searched, the threads take the remaining root moves one at a time. They
+   share the best fitness found at the root so far, which they use as their
+   alpha (or beta) bound.                                                   */
+public class Engine implements AutoCloseable {
+
+    static final int MATE = 30000; //Fitness of a checkmate at the root
+    static final int MAX_DEPTH = 64;
+    static final int MAX_QUIESCENCE_PLY = 32;
+    static final int DELTA_MARGIN = 20; //Positional slack for delta pruning
+    //Parallel search modes
+    static final int LAZY_SMP = 0;
+    static final int ROOT_SPLIT = 1;
+
+    private TranspositionTable table;
+    private boolean pruning = true; //Alpha-beta pruning can be switched off
+    private int quiescenceBudget = 1000; //Quiescence boards allowed per leaf
+    private int mode = LAZY_SMP;
+    private ForkJoinPool pool; //Runs the other threads when there is more than one
+    //One context per thread, the first for the thread calling search()
+    private SearchContext[] contexts = {new SearchContext()};
+    private int search; //Number of the current search
+    private long deadline; //System.nanoTime() at which the search must stop
+    private long nodeLimit; //Boards the search may evaluate, over all threads
+    //Boards evaluated by all threads of the search, as each last added its count
+    private final AtomicLong searched = new AtomicLong();
+    private volatile boolean helpersStopped; //Set once the main thread is done
+    private volatile boolean stopRequested; //Set by stop()
+    private Consumer<SearchResult> listener; //Told of each completed depth
+    private Consumer<SearchStats> statsListener; //Told of each search's statistics
+
+    /**
+     * Constructor. The engine starts with one thread and a 16 MB table.
+     */
+    public Engine() {
+        this(16);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param megabytes Size of the transposition table in megabytes.
+     */
+    public Engine(int megabytes) {
+        table = new TranspositionTable(megabytes);
+    }
+
+    /**
+     * Switches alpha-beta pruning on or off. The search returns the same
+     * fitness either way, pruning only reduces the number of boards evaluated.
+     *
+     * @param pruning
+     */
+    public synchronized void setPruning(boolean pruning) {
+        this.pruning = pruning;
+    }
+
+    /**
+     * Sets the number of threads the search runs on.
+     *
+     * @param threads
+     */
+    public synchronized void setThreads(int threads) {
+        if (pool != null) {
+            pool.shutdown();
+        }
+        threads = Math.max(1, threads);
+        pool = (threads > 1 ? new ForkJoinPool(threads - 1) : null);
+        SearchContext[] resized = new SearchContext[threads];
+        for (int i = 0; i < threads; i++) {
+            resized[i] = (i < contexts.length ? contexts[i] : new SearchContext());
+        }
+        contexts = resized;
+    }
+
+    /**
+     * Returns the number of threads the search runs on.
+     *
+     * @return
+     */
+    public synchronized int getThreads() {
+        return contexts.length;
+    }
+
+    /**
+     * Sets how the search is split across threads, when there is more than
+     * one.
+     *
+     * @param mode LAZY_SMP or ROOT_SPLIT.
+     */
+    public synchronized void setParallelMode(int mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Sets the number of boards the quiescence search may visit below each
+     * leaf of the main search. Once it is used up, the remaining captures are
+     * not searched. A budget of 0 switches the quiescence search off, so that
+     * leaves are evaluated as they stand.
+     *
+     * @param budget
+     */
+    public synchronized void setQuiescenceBudget(int budget) {
+        this.quiescenceBudget = budget;
+    }
+
+    /**
+     * Replaces the transposition table with an empty one of the given size.
+     *
+     * @param megabytes Size of the table in megabytes.
+     */
+    public synchronized void setHashSize(int megabytes) {
+        table = new TranspositionTable(megabytes);
+    }
+
+    /**
+     * Removes all entries from the transposition table.
+     */
+    public synchronized void clearHash() {
+        table.clear();
+    }
+
+    /**
+     * Sets a listener that is given the result of each depth of the search as
+     * it completes, on the searching thread. With a listener, the search
+     * always deepens one depth at a time, so that every depth is reported.
+     *
+     * @param listener The listener, or null for none.
+     */
+    public synchronized void setListener(Consumer<SearchResult> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets a listener that is given the statistics of every search once it
+     * finishes, on the searching thread, eg to publish them as metrics (see
+     * SearchMonitor). Unlike the listener of setListener(), it does not change
+     * how the search deepens.
+     *
+     * @param statsListener The listener, or null for none.
+     */
+    public synchronized void setStatsListener(
+            Consumer<SearchStats> statsListener) {
+        this.statsListener = statsListener;
+    }
+
+    /**
+     * Asks the running search to stop as soon as possible. It is the only
+     * method that may be called while a search is running, from any thread.
+     * The search still returns the move found by the deepest search that
+     * completed, and depth 1 is always completed.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Shuts down the threads of the engine. The engine can still search, on
+     * the calling thread alone.
+     */
+    @Override
+    public synchronized void close() {
+        setThreads(1);
+    }
+
+    /**
+     * Searches a board for the best move of the player to move. Without a
+     * time or node limit, the board is searched to the depth limit. With one,
+     * an iterative deepening search is run: the board is searched to depth 1,
+     * then 2, and so on until the time (or the nodes) run out or the depth
+     * limit is reached, and the move returned is the one found by the deepest
+     * search that completed. Each iteration searches the best moves of the
+     * previous one first, as they are held in the transposition table. A new
+     * iteration is not started once half the time or nodes are used, as it
+     * would almost certainly not complete.
+     *
+     * @param board The board to be searched. It is not changed.
+     * @param limits Depth, time and node limits of the search.
+     * @return The move found, its fitness and the search statistics.
+     */
+    public synchronized SearchResult search(Board board, SearchLimits limits) {
+        return search(board, limits, true);
+    }
+
+    /**
+     * Searches a board like search(), but makes and unmakes the moves on the
+     * board itself instead of a copy, so that a caller that searches one
+     * position after another on its own board creates no board for each.
+     * The board is left as it was, but must not be used by any other thread
+     * until the search returns.
+     *
+     * @param board The board to be searched.
+     * @param limits Depth, time and node limits of the search.
+     * @return The move found, its fitness and the search statistics.
+     */
+    public synchronized SearchResult searchInPlace(Board board,
+            SearchLimits limits) {
+        return search(board, limits, false);
+    }
+
+    /**
+     * Runs a search for search() and searchInPlace().
+     *
+     * @param board The board to be searched.
+     * @param limits Depth, time and node limits of the search.
+     * @param copy Whether to search a copy of the board.
+     * @return
+     */
+    private SearchResult search(Board board, SearchLimits limits, boolean copy) {
+        long start = System.nanoTime();
+        Duration time = limits.getTime();
+        deadline = (time == null ? Long.MAX_VALUE : start + time.toNanos());
+        nodeLimit = (limits.getNodes() == 0 ? Long.MAX_VALUE : limits.getNodes());
+        searched.set(0);
+        boolean limited = (time != null || limits.getNodes() != 0);
+        stopRequested = false;
+        search++;
+        table.newSearch();
+        SearchContext ctx = contexts[0];
+        ctx.newTask(search, false);
+        //The search makes and unmakes moves on a single board
+        ctx.board = (copy ? new Board(board) : board);
+        boolean white = board.isWhiteToMove();
+        int maxDepth = Math.min(limits.getDepth(), MAX_DEPTH);
+        List<ForkJoinTask<SearchContext>> helpers = startHelpers(ctx);
+        int bestMove = 0;
+        int bestScore = 0;
+        int completedDepth = 0;
+        List<Duration> iterations = new ArrayList<>();
+        //Without a time or node limit, helpers or a listener, only the last
+        //depth is searched; otherwise the shallower searches fill the table
+        //for the deeper ones
+        int depth = (!limited && helpers.isEmpty() && listener == null
+                ? maxDepth : 1);
+        for (; depth <= maxDepth; depth++) {
+            long iteration = System.nanoTime();
+            int fitness = searchRoot(ctx, white, depth);
+            if (ctx.stopped || ctx.bestMove == 0) { //Out of time, or no safe moves
+                if (completedDepth == 0 && !ctx.stopped) {
+                    bestScore = fitness; //Checkmate or stalemate
+                }
+                break;
+            }
+            bestMove = ctx.bestMove;
+            bestScore = fitness;
+            completedDepth = depth;
+            iterations.add(Duration.ofNanos(System.nanoTime() - iteration));
+            if (listener != null) {
+                //The helpers are still running, so their counts are approximate
+                listener.accept(result(ctx, bestMove, bestScore, depth,
+                        stats(1 + helpers.size(), depth, iterations, start)));
+            }
+            if (limited && (Math.abs(fitness) > MATE / 2
+                    || System.nanoTime() - start > (deadline - start) / 2
+                    || countNodes(ctx) > nodeLimit / 2)) {
+                break; //Mate found, or not enough left for another iteration
+            }
+        }
+        finish(helpers);
+        SearchStats stats = stats(1 + helpers.size(), completedDepth, iterations,
+                start);
+        if (statsListener != null) {
+            statsListener.accept(stats);
+        }
+        return result(ctx, bestMove, bestScore, completedDepth, stats);
+    }
+
+    /**
+     * Sums the statistics of the threads of a search.
+     *
+     * @param threads Number of threads searching, the contexts of which are
+     * the first in the array.
+     * @param depth Deepest iteration completed.
+     * @param iterations Time taken by each completed iteration.
+     * @param start System.nanoTime() at which the search started.
+     * @return
+     */
+    private SearchStats stats(int threads, int depth, List<Duration> iterations,
+            long start) {
+        long[] sums = new long[7];
+        int selectiveDepth = 0;
+        for (int i = 0; i < threads; i++) {
+            SearchContext ctx = contexts[i];
+            sums[0] += ctx.counter;
+            sums[1] += ctx.quiescenceTotal;
+            sums[2] += ctx.expanded;
+            sums[3] += ctx.cutoffs;
+            sums[4] += ctx.firstMoveCutoffs;
+            sums[5] += ctx.hashProbes;
+            sums[6] += ctx.hashHits;
+            selectiveDepth = Math.max(selectiveDepth, ctx.selectiveDepth);
+        }
+        return new SearchStats(sums[0], sums[1], sums[2], sums[3], sums[4],
+                sums[5], sums[6], depth, selectiveDepth,
+                Duration.ofNanos(System.nanoTime() - start), iterations);
+    }
+
+    /**
+     * Creates the result of a search, or of one of its depths.
+     *
+     * @param main Context of the main thread, holding the root board.
+     * @param move The packed move found, or 0 if there are no safe moves.
+     * @param fitness Fitness of the move, for the white player.
+     * @param depth Depth completed.
+     * @param stats Statistics of the search so far.
+     * @return
+     */
+    private SearchResult result(SearchContext main, int move, int fitness,
+            int depth, SearchStats stats) {
+        boolean white = main.board.isWhiteToMove();
+        return new SearchResult((move == 0 ? null : new Move(move)),
+                (white ? fitness : -fitness), depth, stats,
+                principalVariation(main.board, move, depth));
+    }
+
+    /**
+     * Returns the principal variation: the best move, followed by the moves
+     * expected in reply, as held in the transposition table. It stops at the
+     * first board whose move is missing or not legal, or at the depth of the
+     * search.
+     *
+     * @param board The root board. It is left as it was.
+     * @param move The packed best move, or 0.
+     * @param depth Depth of the search.
+     * @return
+     */
+    private List<Move> principalVariation(Board board, int move, int depth) {
+        List<Move> pv = new ArrayList<>();
+        int[] played = new int[depth];
+        UndoInfo[] undos = new UndoInfo[depth];
+        IntMoveList moves = new IntMoveList();
+        int n = 0;
+        for (; n < depth && move != 0; n++) {
+            boolean white = board.isWhiteToMove();
+            moves.clear();
+            MoveGenerator.generateLegalMoves(board, white, moves);
+            if (!moves.contains(move)) {
+                break;
+            }
+            undos[n] = new UndoInfo();
+            board.makeMove(move, undos[n]);
+            played[n] = move;
+            pv.add(new Move(move));
+            long entry = table.probe(board.getKey());
+            move = (entry == 0 ? 0 : TranspositionTable.move(entry));
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            board.unmakeMove(played[i], undos[i]);
+        }
+        return pv;
+    }
+
+    /**
+     * Starts the helper threads of a Lazy SMP search. Each helper runs its own
+     * iterative deepening search of the root board until the main thread is
+     * done. Helpers with an odd number start at depth 2, so at any time about
+     * half of them are a depth ahead of the others.
+     *
+     * @param main Context of the main thread, holding the root board.
+     * @return The running helpers, empty when there are none.
+     */
+    private List<ForkJoinTask<SearchContext>> startHelpers(SearchContext main) {
+        List<ForkJoinTask<SearchContext>> helpers = new ArrayList<>();
+        if (contexts.length == 1 || mode != LAZY_SMP) {
+            return helpers;
+        }
+        helpersStopped = false;
+        boolean white = main.board.isWhiteToMove();
+        for (int i = 1; i < contexts.length; i++) {
+            int id = i;
+            SearchContext ctx = contexts[i];
+            ctx.newTask(search, true);
+            ctx.board = new Board(main.board); //Copied before the main thread starts
+            helpers.add(pool.submit(() -> {
+                for (int depth = 1 + (id & 1); depth <= MAX_DEPTH
+                        && !ctx.stopped && !helpersStopped; depth++) {
+                    searchRoot(ctx, white, depth);
+                }
+                return ctx;
+            }));
+        }
+        return helpers;
+    }
+
+    /**
+     * Stops the helper threads, and waits for them to finish.
+     *
+     * @param helpers The running helpers.
+     */
+    private void finish(List<ForkJoinTask<SearchContext>> helpers) {
+        helpersStopped = true;
+        for (ForkJoinTask<SearchContext> helper : helpers) {
+            helper.join();
+        }
+    }
+
+    /**
+     * Adds the boards a thread has evaluated since it last did so to the
+     * total of the search, and returns the total. The boards of the other
+     * threads are only counted up to their last call.
+     *
+     * @param ctx Context of the thread.
+     * @return
+     */
+    private long countNodes(SearchContext ctx) {
+        long total = searched.addAndGet(ctx.counter - ctx.counted);
+        ctx.counted = ctx.counter;
+        return total;
+    }
+
+    /**
+     * Checks whether a thread must stop searching: the time or the nodes of
+     * the search (summed over its threads) are used up or stop() was called
+     * (once depth 1 has completed), or it is a helper and the main thread is
+     * done. The result of a stopped search is discarded.
+     *
+     * @param ctx Context of the thread.
+     */
+    private void checkStop(SearchContext ctx) {
+        long total = countNodes(ctx);
+        if ((ctx.rootDepth > 1 && (System.nanoTime() > deadline
+                || total >= nodeLimit || stopRequested))
+                || (ctx.helper && helpersStopped)) {
+            ctx.stopped = true;
+        }
+    }
+
+    /**
+     * Searches the root of the decision tree, and sets the context's best move
+     * and its fitness. The safe moves are put in order, and the first is
+     * searched on its own to give a bound. The rest are then searched one
+     * after the other, or shared between the threads in root split mode.
+     *
+     * @param ctx Context of the calling thread, holding the root board.
+     * @param maximize Boolean indicating whether the white player is to move.
+     * @param depth Depth of the decision tree.
+     * @return Fitness of the best move.
+     */
+    private int searchRoot(SearchContext ctx, boolean maximize, int depth) {
+        Board board = ctx.board;
+        ctx.rootDepth = depth;
+        ctx.bestMove = 0;
+        long entry = table.probe(board.getKey());
+        IntMoveList moves = ctx.moveLists[depth];
+        moves.clear();
+        MoveGenerator.generateLegalMoves(board, maximize, moves);
+        int hashMove = (entry == 0 ? 0 : TranspositionTable.move(entry));
+        ctx.ordering.score(moves, hashMove, 0);
+        int safe = moves.size();
+        for (int i = 0; i < safe; i++) { //Put the moves in order
+            MoveOrdering.next(moves, i);
+        }
+        ctx.counter++;
+        if (safe == 0) { //Checkmate or stalemate
+            ctx.score = (!board.inCheck(maximize) ? 0
+                    : (maximize ? -MATE - depth : MATE + depth));
+            return ctx.score;
+        }
+        int[] scores = ctx.rootScores;
+        scores[0] = searchRootMove(ctx, moves.get(0), maximize, Integer.MIN_VALUE,
+                Integer.MAX_VALUE, depth);
+        if (mode == ROOT_SPLIT && contexts.length > 1 && safe > 1 && !ctx.stopped) {
+            splitRootMoves(ctx, moves, maximize, depth, scores);
+        } else {
+            for (int i = 1; i < safe && !ctx.stopped; i++) {
+                int bound = scores[best(scores, i, maximize)];
+                scores[i] = searchRootMove(ctx, moves.get(i), maximize,
+                        (maximize ? bound : Integer.MIN_VALUE),
+                        (maximize ? Integer.MAX_VALUE : bound), depth);
+            }
+        }
+        if (ctx.stopped) { //Result is discarded
+            return 0;
+        }
+        int best = best(scores, safe, maximize);
+        ctx.bestMove = moves.get(best);
+        ctx.score = scores[best];
+        table.store(board.getKey(), depth, TranspositionTable.EXACT,
+                toTable(scores[best], depth), moves.get(best));
+        return scores[best];
+    }
+
+    /**
+     * Shares the root moves after the first between the threads. Every thread,
+     * the calling one included, searches a copy of the root board with its own
+     * context, taking the next unsearched move each time it finishes one. The
+     * best fitness found so far is shared through an atomic bound: a thread
+     * reads it before searching a move and raises (or for the black player,
+     * lowers) it when the move is better.
+     *
+     * @param ctx Context of the calling thread, holding the root board.
+     * @param moves The safe moves at the root, in order.
+     * @param maximize Boolean indicating whether the white player is to move.
+     * @param depth Depth of the decision tree.
+     * @param scores Fitness of each move, the first already filled in.
+     */
+    private void splitRootMoves(SearchContext ctx, IntMoveList moves,
+            boolean maximize, int depth, int[] scores) {
+        AtomicInteger bound = new AtomicInteger(scores[0]);
+        AtomicInteger next = new AtomicInteger(1);
+        List<ForkJoinTask<?>> workers = new ArrayList<>();
+        for (int i = 1; i < contexts.length; i++) {
+            SearchContext worker = contexts[i];
+            worker.newTask(search, false);
+            worker.board = new Board(ctx.board);
+            worker.rootDepth = depth;
+            workers.add(pool.submit(() -> takeRootMoves(worker, moves, maximize,
+                    depth, scores, bound, next)));
+        }
+        takeRootMoves(ctx, moves, maximize, depth, scores, bound, next);
+        for (int i = 0; i < workers.size(); i++) {
+            workers.get(i).join();
+            SearchContext worker = contexts[i + 1];
+            ctx.add(worker);
+            ctx.stopped |= worker.stopped;
+        }
+    }
+
+    /**
+     * Searches root moves for one thread of a root split, until none are left.
+     * A move that is no better than the bound it started with may have been
+     * cut short, so its fitness is only an upper (lower) bound, and it is
+     * never chosen over an exactly searched move.
+     *
+     * @param ctx Context of the thread.
+     * @param moves The safe moves at the root, in order.
+     * @param maximize Boolean indicating whether the white player is to move.
+     * @param depth Depth of the decision tree.
+     * @param scores Fitness of each move.
+     * @param bound Best fitness found at the root so far.
+     * @param next Index of the next move to search.
+     */
+    private void takeRootMoves(SearchContext ctx, IntMoveList moves,
+            boolean maximize, int depth, int[] scores, AtomicInteger bound,
+            AtomicInteger next) {
+        for (int i = next.getAndIncrement(); i < moves.size() && !ctx.stopped;
+                i = next.getAndIncrement()) {
+            int start = bound.get();
+            int fitness = searchRootMove(ctx, moves.get(i), maximize,
+                    (maximize ? start : Integer.MIN_VALUE),
+                    (maximize ? Integer.MAX_VALUE : start), depth);
+            if (maximize ? fitness > start : fitness < start) {
+                bound.accumulateAndGet(fitness,
+                        (maximize ? Math::max : Math::min));
+            } else if (fitness == start) {
+                //Cut short, so it may be worse - never chosen on a tie
+                fitness = (maximize ? fitness - 1 : fitness + 1);
+            }
+            scores[i] = fitness;
+        }
+    }
+
+    /**
+     * Searches a single move at the root.
+     *
+     * @param ctx Context of the calling thread, holding the root board.
+     * @param move The packed move.
+     * @param maximize Boolean indicating whether the white player is to move.
+     * @param alpha Alpha value (for alpha-beta pruning).
+     * @param beta Beta value (for alpha-beta pruning).
+     * @param depth Depth of the decision tree.
+     * @return Fitness of the move.
+     */
+    private int searchRootMove(SearchContext ctx, int move, boolean maximize,
+            int alpha, int beta, int depth) {
+        UndoInfo undo = ctx.undos[depth];
+        ctx.board.makeMove(move, undo);
+        int fitness = minimax(ctx, ctx.board, !maximize, alpha, beta, depth - 1);
+        ctx.board.unmakeMove(move, undo);
+        return fitness;
+    }
+
+    /**
+     * Returns the index of the best of the first n fitness values. Ties go to
+     * the earliest, as it was ordered first.
+     *
+     * @param scores Fitness values.
+     * @param n Number of values to consider.
+     * @param maximize Boolean indicating whether higher fitness is better.
+     * @return
+     */
+    private static int best(int[] scores, int n, boolean maximize) {
+        int best = 0;
+        for (int i = 1; i < n; i++) {
+            if (maximize ? scores[i] > scores[best] : scores[i] < scores[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Recursive minimax method (with alpha-beta pruning). Each move is applied
+     * to the board with makeMove() and taken back with unmakeMove() after its
+     * subtree has been searched, so the board is left unchanged. The
+     * transposition table is probed before the children are expanded: a deep
+     * enough result for the position ends the search of this node. Children
+     * are searched in the order given by MoveOrdering.
+     *
+     * @param ctx Context of the thread running the search.
+     * @param board Current board.
+     * @param maximize Boolean indicating whether we are in a maximizing
+     * (white to move) or minimizing (black to move) iteration.
+     * @param alpha Alpha value (for alpha-beta pruning).
+     * @param beta Beta value (for alpha-beta pruning).
+     * @param depth Current depth of the decision tree.
+     */
+    private int minimax(SearchContext ctx, Board board, boolean maximize,
+            int alpha, int beta, int depth) {
+        ctx.counter++;
+        if ((ctx.counter & 1023) == 0) { //Check every 1024 boards
+            checkStop(ctx);
+        }
+        if (ctx.stopped) { //Result is discarded
+            return 0;
+        }
+        if (depth == 0) { //Base case
+            ctx.selectiveDepth = Math.max(ctx.selectiveDepth, ctx.rootDepth);
+            if (quiescenceBudget == 0) {
+                return board.boardEval(true);
+            }
+            ctx.quiescenceNodes = 0;
+            return quiescence(ctx, board, maximize, alpha, beta, 0);
+        }
+        long entry = table.probe(board.getKey());
+        ctx.hashProbes++;
+        int hashMove = 0;
+        if (entry != 0) {
+            ctx.hashHits++;
+            hashMove = TranspositionTable.move(entry);
+            //Plain minimax (pruning off) searches every node
+            if (pruning && TranspositionTable.depth(entry) >= depth) {
+                int stored = fromTable(TranspositionTable.score(entry), depth);
+                switch (TranspositionTable.bound(entry)) {
+                    case TranspositionTable.EXACT:
+                        return stored;
+                    case TranspositionTable.LOWER:
+                        if (stored >= beta) {
+                            return stored;
+                        }
+                        break;
+                    case TranspositionTable.UPPER:
+                        if (stored <= alpha) {
+                            return stored;
+                        }
+                        break;
+                }
+            }
+        }
+        int originalAlpha = alpha;
+        int originalBeta = beta;
+        int bestFitness = 0;
+        int newFitness = 0;
+        int bestMove = 0;
+        IntMoveList moves = ctx.moveLists[depth];
+        moves.clear();
+        MoveGenerator.generateLegalMoves(board, maximize, moves);
+        if (moves.size() == 0) { //Checkmate or stalemate
+            if (!board.inCheck(maximize)) {
+                return 0;
+            }
+            //Being mated sooner is worse, so the depth left is added on
+            return (maximize ? -MATE - depth : MATE + depth);
+        }
+        ctx.expanded++;
+        int ply = ctx.rootDepth - depth;
+        ctx.ordering.score(moves, hashMove, ply);
+        UndoInfo undo = ctx.undos[depth];
+        if (maximize) {
+            bestFitness = Integer.MIN_VALUE;
+        } else {
+            bestFitness = Integer.MAX_VALUE;
+        }
+        //Check all next possible moves
+        for (int i = 0; i < moves.size(); i++) {
+            int m = MoveOrdering.next(moves, i);
+            board.makeMove(m, undo);
+            //Recursive call
+            newFitness = minimax(ctx, board, !maximize, alpha, beta, depth - 1);
+            board.unmakeMove(m, undo);
+            if (ctx.stopped) {
+                return 0;
+            }
+            if (maximize) {
+                if (newFitness > bestFitness) { //Check if we have new max
+                    bestFitness = newFitness;
+                    bestMove = m;
+                }
+                //Check if we need to change alpha value
+                alpha = Math.max(alpha, bestFitness);
+            } else {
+                if (newFitness < bestFitness) { //Check if we have a new min
+                    bestFitness = newFitness;
+                    bestMove = m;
+                }
+                //Check if we need to change beta value
+                beta = Math.min(beta, bestFitness);
+            }
+            if (pruning && beta <= alpha) { //Useless branch - don't explore
+                ctx.cutoffs++;
+                if (i == 0) {
+                    ctx.firstMoveCutoffs++;
+                }
+                ctx.ordering.cutoff(m, ply, depth);
+                break;
+            }
+        }
+        int bound = TranspositionTable.EXACT;
+        if (bestFitness <= originalAlpha) {
+            bound = TranspositionTable.UPPER;
+        } else if (bestFitness >= originalBeta) {
+            bound = TranspositionTable.LOWER;
+        }
+        table.store(board.getKey(), depth, bound, toTable(bestFitness, depth),
+                bestMove);
+        return bestFitness;
+    }
+
+    /**
+     * Quiescence search, run at the leaves of the main search. Only captures
+     * and promotions are searched, until the position is quiet. The player to
+     * move may also "stand pat" - decline every capture and keep the fitness
+     * of the board as it stands. Captures that lose material by static
+     * exchange evaluation are not searched, and with pruning on, neither are
+     * captures that could not raise the fitness to alpha even with a margin
+     * to spare (delta pruning), nor anything once the budget for the leaf is
+     * used up. A player in check may not stand pat: every legal move out of
+     * check is searched, and with none the board is scored as checkmate.
+     *
+     * @param ctx Context of the thread running the search.
+     * @param board Current board.
+     * @param maximize Boolean indicating whether we are in a maximizing
+     * (white to move) or minimizing (black to move) iteration.
+     * @param alpha Alpha value (for alpha-beta pruning).
+     * @param beta Beta value (for alpha-beta pruning).
+     * @param ply Distance from the leaf of the main search.
+     * @return
+     */
+    private int quiescence(SearchContext ctx, Board board,
+            boolean maximize, int alpha, int beta, int ply) {
+        ctx.counter++;
+        ctx.quiescenceNodes++;
+        ctx.quiescenceTotal++;
+        ctx.selectiveDepth = Math.max(ctx.selectiveDepth, ctx.rootDepth + ply);
+        if ((ctx.counter & 1023) == 0) {
+            checkStop(ctx);
+        }
+        int standPat = board.boardEval(true);
+        if (ctx.stopped || ply == MAX_QUIESCENCE_PLY
+                || (pruning && ctx.quiescenceNodes > quiescenceBudget)) {
+            return standPat;
+        }
+        if (board.inCheck(maximize)) {
+            return evasions(ctx, board, maximize, alpha, beta, ply);
+        }
+        if (maximize) {
+            alpha = Math.max(alpha, standPat);
+        } else {
+            beta = Math.min(beta, standPat);
+        }
+        if (pruning && beta <= alpha) { //Standing pat is already good enough
+            return standPat;
+        }
+        int bestFitness = standPat;
+        IntMoveList moves = ctx.captureLists[ply];
+        moves.clear();
+        MoveGenerator.generateLegalCaptures(board, maximize, moves);
+        MoveOrdering.scoreCaptures(moves);
+        UndoInfo undo = ctx.captureUndos[ply];
+        for (int i = 0; i < moves.size(); i++) {
+            int m = MoveOrdering.next(moves, i);
+            if (pruning) {
+                //Material the capture could win at best
+                int gain = Board.EXCHANGE_VALUES[Move.captured(m)] + DELTA_MARGIN;
+                if (Move.promotion(m) != 0) {
+                    gain += Board.EXCHANGE_VALUES[Move.promotion(m)]
+                            - Board.EXCHANGE_VALUES[Piece.PAWN];
+                }
+                if (maximize ? standPat + gain <= alpha : standPat - gain >= beta) {
+                    continue;
+                }
+            }
+            if (board.see(m) < 0) { //Loses material
+                continue;
+            }
+            board.makeMove(m, undo);
+            int newFitness = quiescence(ctx, board, !maximize, alpha, beta,
+                    ply + 1);
+            board.unmakeMove(m, undo);
+            if (maximize) {
+                bestFitness = Math.max(bestFitness, newFitness);
+                alpha = Math.max(alpha, bestFitness);
+            } else {
+                bestFitness = Math.min(bestFitness, newFitness);
+                beta = Math.min(beta, bestFitness);
+            }
+            if (pruning && beta <= alpha) {
+                break;
+            }
+        }
+        return bestFitness;
+    }
+
+    /**
+     * Searches the moves out of check of a board in the quiescence search.
+     * Quiet moves are searched as well as captures, and none are pruned.
+     *
+     * @param ctx Context of the thread running the search.
+     * @param board Current board, the player to move being in check.
+     * @param maximize Boolean indicating whether we are in a maximizing
+     * (white to move) or minimizing (black to move) iteration.
+     * @param alpha Alpha value (for alpha-beta pruning).
+     * @param beta Beta value (for alpha-beta pruning).
+     * @param ply Distance from the leaf of the main search.
+     * @return
+     */
+    private int evasions(SearchContext ctx, Board board, boolean maximize,
+            int alpha, int beta, int ply) {
+        IntMoveList moves = ctx.captureLists[ply];
+        moves.clear();
+        MoveGenerator.generateLegalMoves(board, maximize, moves);
+        if (moves.size() == 0) { //Checkmate, worse the nearer the leaf
+            return (maximize ? -MATE + ply : MATE - ply);
+        }
+        MoveOrdering.scoreCaptures(moves); //Captures first
+        UndoInfo undo = ctx.captureUndos[ply];
+        int bestFitness = (maximize ? Integer.MIN_VALUE : Integer.MAX_VALUE);
+        for (int i = 0; i < moves.size(); i++) {
+            int m = MoveOrdering.next(moves, i);
+            board.makeMove(m, undo);
+            int newFitness = quiescence(ctx, board, !maximize, alpha, beta,
+                    ply + 1);
+            board.unmakeMove(m, undo);
+            if (maximize) {
+                bestFitness = Math.max(bestFitness, newFitness);
+                alpha = Math.max(alpha, bestFitness);
+            } else {
+                bestFitness = Math.min(bestFitness, newFitness);
+                beta = Math.min(beta, bestFitness);
+            }
+            if (pruning && beta <= alpha) {
+                break;
+            }
+        }
+        return bestFitness;
+    }
+
+    /**
+     * Converts a fitness to the form stored in the transposition table. Mate
+     * fitness depends on the depth left when the mate was found, so it is
+     * stored relative to the current node instead.
+     *
+     * @param fitness The fitness.
+     * @param depth Depth left at the current node.
+     * @return
+     */
+    private static int toTable(int fitness, int depth) {
+        if (fitness > MATE / 2) {
+            return fitness - depth;
+        } else if (fitness < -MATE / 2) {
+            return fitness + depth;
+        }
+        return fitness;
+    }
+
+    /**
+     * Converts a fitness stored in the transposition table back to a fitness
+     * at the current node.
+     *
+     * @param stored The stored fitness.
+     * @param depth Depth left at the current node.
+     * @return
+     */
+    private static int fromTable(int stored, int depth) {
+        if (stored > MATE / 2) {
+            return stored + depth;
+        } else if (stored < -MATE / 2) {
+            return stored - depth;
+        }
+        return stored;
+    }
+}
@@ -0,0 +1,108 @@
+package chess;
+
+/* Class representing a reusable buffer of packed (int) moves. Move generation
+fills it, move ordering rearranges it in place and the search reads it, so none
+of these steps allocate once the buffer has been created.                   */
+public class IntMoveList {
+
+    int[] moves;
+    int[] scores; //Rank of each move, filled in by move ordering
+    int size;
+
+    /**
+     * Constructor. 256 is enough for the pseudo-legal moves of any position.
+     */
+    public IntMoveList() {
+        this(256);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Initial number of moves the list can hold.
+     */
+    public IntMoveList(int capacity) {
+        moves = new int[capacity];
+        scores = new int[capacity];
+        size = 0;
+    }
+
+    /**
+     * Adds a move to the end of the list.
+     *
+     * @param move The packed move.
+     */
+    public void add(int move) {
+        if (size == moves.length) { //Only reached with a tiny initial capacity
+            moves = java.util.Arrays.copyOf(moves, size * 2);
+            scores = java.util.Arrays.copyOf(scores, size * 2);
+        }
+        moves[size++] = move;
+    }
+
+    /**
+     * Returns the move at the given index.
+     *
+     * @param i Index of the move.
+     * @return
+     */
+    public int get(int i) {
+        return moves[i];
+    }
+
+    /**
+     * Replaces the move at the given index.
+     *
+     * @param i Index of the move.
+     * @param move The packed move.
+     */
+    public void set(int i, int move) {
+        moves[i] = move;
+    }
+
+    /**
+     * Swaps two moves (and their ranks).
+     *
+     * @param i Index of the first move.
+     * @param j Index of the second move.
+     */
+    public void swap(int i, int j) {
+        int move = moves[i];
+        moves[i] = moves[j];
+        moves[j] = move;
+        int rank = scores[i];
+        scores[i] = scores[j];
+        scores[j] = rank;
+    }
+
+    /**
+     * Returns whether the list holds a move.
+     *
+     * @param move The packed move.
+     * @return
+     */
+    public boolean contains(int move) {
+        for (int i = 0; i < size; i++) {
+            if (moves[i] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of moves in the list.
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all moves from the list.
+     */
+    public void clear() {
+        size = 0;
+    }
+}
@@ -1,11 +1,17 @@
 package chess;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Paths;
 import java.util.*;
 
 /**
- * *IF YOU WANT TO CHANGE WHERE THE PIECES ARE INITIALIZED TO*** Go to the
- * initBoard() method in the Board class (line 286) and change x and y for
- * whatever piece you want to move to the coordinates you want it to be placed.
+ * *IF YOU WANT TO CHANGE WHERE THE PIECES ARE INITIALIZED TO*** Pass the
+ * position in Forsyth-Edwards Notation as the argument, eg
+ * java chess.Main "4k3/8/8/8/8/8/4P3/4K3 w - - 0 1"
+ * To have the computer play its openings from a book (see OpeningBook), start
+ * with "book" and the book file, eg java chess.Main book openings.bin
  */
 public class Main {
 
@@ -15,14 +21,15 @@ public class Main {
     static Board board;
     Player currentPlayer;
 
-    public Main() {
-        whiteTurn = true; //Initializing variables
+    public Main(String fen) {
+        //Initializing variables
+        board = (fen == null ? new Board() : Board.fromFen(fen));
+        whiteTurn = board.isWhiteToMove();
         scanner = new Scanner(System.in);
         setMinimaxDepth();
         helpMenu();
         boolean swapTurns = true;
         Piece p;
-        board = new Board();
         board.printBoard();
         for (;;) {
             p = null;
@@ -78,7 +85,7 @@ public class Main {
                                         board.move(nextMove); //Apply move
                                         //Check for piece promotion
                                         if (p.getRow() == 0) {
-                                            p = board.piecePromotion(p);
+                                            board.replacePiece(p, board.piecePromotion(p));
                                         }
                                         break OUTER_2;
                                     case 'r':
@@ -111,11 +118,12 @@ public class Main {
                     board.printBoard();
                 }
             } else { //AI player
-                Move nextMove = currentPlayer.nextMove(); //Get next move
+                Move nextMove = currentPlayer.nextMove(board); //Get next move
                 board.move(nextMove); //Apply move
                 p = board.getPieceAt(nextMove.getDestRow(), nextMove.getDestCol());
-                if (p.getType() == 'P') { //Check for piece promotion
-                    p = board.piecePromotion(p);
+                //Check for piece promotion
+                if (p.getType() == 'P' && p.getRow() == 7) {
+                    board.replacePiece(p, board.piecePromotion(p));
                 }
                 System.out.println(nextMove);
                 board.printBoard();
@@ -254,8 +262,19 @@ public class Main {
         }
     }
 
-    public static void main(String[] args) {
-        Main m = new Main();
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("uci")) { //Driven by a GUI
+            new Uci(new BufferedReader(new InputStreamReader(System.in)),
+                    System.out).run();
+            return;
+        }
+        int first = 0; //First argument of the position
+        if (args.length > 1 && args[0].equals("book")) {
+            Minimax.setBook(OpeningBook.open(Paths.get(args[1])));
+            first = 2;
+        }
+        Main m = new Main(args.length > first ? String.join(" ",
+                Arrays.copyOfRange(args, first, args.length)) : null);
     }
 
 }
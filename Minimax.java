@@ -1,13 +1,28 @@
 package chess;
+import java.time.Duration;
 import java.util.ArrayList;
 
 /* Class containing the minimax algorithm and other methods necessary for the 
-algorithm.                                                                  */
+algorithm. The search itself is run by an Engine; this class keeps a single
+engine for the game played through Main, and the statics below summarise the
+last search once it is over. Other games (or tools) searching at the same time
+should each create their own Engine. If an opening book is set, a board found
+in it is given the book's move without a search.                             */
 public class Minimax {
 
-    static Move nextMove;
+    static final int MATE = Engine.MATE;
+    static final int LAZY_SMP = Engine.LAZY_SMP;
+    static final int ROOT_SPLIT = Engine.ROOT_SPLIT;
     static int DEPTH;
-    static int counter;
+    //Statistics of the last search, summed over all the threads
+    static long counter;
+    static long cutoffs; //Number of beta cutoffs in the last search
+    static long firstMoveCutoffs; //Cutoffs caused by the first move searched
+    static int completedDepth; //Deepest iteration completed by the last search
+    static int score; //Fitness of the move found by the last search
+    static SearchStats stats; //All the statistics of the last search
+    static final Engine engine = new Engine();
+    static OpeningBook book; //Looked up before searching, if set
 
     /**
      * Sets depth of decision tree.
@@ -18,79 +33,149 @@ public class Minimax {
         Minimax.DEPTH = depth;
     }
 
+    /**
+     * Switches alpha-beta pruning on or off. The search returns the same
+     * fitness either way, pruning only reduces the number of boards evaluated.
+     *
+     * @param pruning
+     */
+    public static void setPruning(boolean pruning) {
+        engine.setPruning(pruning);
+    }
+
+    /**
+     * Sets the number of threads the search runs on.
+     *
+     * @param threads
+     */
+    public static void setThreads(int threads) {
+        engine.setThreads(threads);
+    }
+
+    /**
+     * Sets how the search is split across threads, when there is more than
+     * one.
+     *
+     * @param mode LAZY_SMP or ROOT_SPLIT.
+     */
+    public static void setParallelMode(int mode) {
+        engine.setParallelMode(mode);
+    }
+
+    /**
+     * Sets the number of boards the quiescence search may visit below each
+     * leaf of the main search. A budget of 0 switches the quiescence search
+     * off.
+     *
+     * @param budget
+     */
+    public static void setQuiescenceBudget(int budget) {
+        engine.setQuiescenceBudget(budget);
+    }
+
+    /**
+     * Replaces the transposition table with an empty one of the given size.
+     *
+     * @param megabytes Size of the table in megabytes.
+     */
+    public static void setHashSize(int megabytes) {
+        engine.setHashSize(megabytes);
+    }
+
+    /**
+     * Removes all entries from the transposition table.
+     */
+    public static void clearHash() {
+        engine.clearHash();
+    }
+
+    /**
+     * Sets the opening book. A board found in it is given a move from the book
+     * instead of being searched.
+     *
+     * @param book The book, or null for none.
+     */
+    public static void setBook(OpeningBook book) {
+        Minimax.book = book;
+    }
+
+    /**
+     * Looks up a move for a player in the opening book.
+     *
+     * @param board The board to find the next move on.
+     * @param player The player to find the next move for.
+     * @return The move, or null if there is no book or the board is not in it.
+     */
+    private static Move bookMove(Board board, Player player) {
+        //The key of the board is for the player it says is to move
+        if (book == null || board.isWhiteToMove() != player.isWhite()) {
+            return null;
+        }
+        int move = book.lookup(board);
+        if (move == 0) {
+            return null;
+        }
+        System.out.println("Book move");
+        return new Move(move);
+    }
+
     /**
      * Returns the next move as determined by the minimax algorithm.
      *
-     * @param board The board object from the Main class.
+     * @param board The board to find the next move on.
      * @param player The player to find the next move for.
      * @return Move object containing the next move for the player.
      */
     public static Move getNextMove(Board board, Player player) {
-        counter = 0;
-        minimax(board, player.isWhite(), true, Integer.MIN_VALUE,
-                Integer.MAX_VALUE, DEPTH);
-        System.out.println("Boards evaluated: " + counter);
-        return nextMove;
+        Move move = bookMove(board, player);
+        if (move != null) {
+            return move;
+        }
+        SearchResult result = search(board, player, SearchLimits.depth(DEPTH));
+        System.out.println(result.getStats());
+        return result.getMove();
     }
 
     /**
-     * Recursive minimax method (with alpha-beta pruning).
+     * Returns the next move as determined by an iterative deepening search
+     * limited by time.
      *
-     * @param board Current board.
-     * @param white Boolean indicating which player we are performing the
-     * minimax algorithm to determine the next move for.
-     * @param maximize Boolean indicating whether we are in a maximizing or
-     * minimizing iteration.
-     * @param alpha Alpha value (for alpha-beta pruning).
-     * @param beta Beta value (for alpha-beta pruning).
-     * @param depth Current depth of the decision tree.
+     * @param board The board to find the next move on.
+     * @param player The player to find the next move for.
+     * @param budget Time allowed for the search.
+     * @return Move object containing the next move for the player.
      */
-    private static int minimax(Board board, boolean white, boolean maximize,
-            int alpha, int beta, int depth) {
-        counter++;
-        if (depth == 0) { //Base case
-            return board.boardEval(white);
-        }
-        int bestFitness = 0;
-        int newFitness = 0;
-        if (maximize) {
-            bestFitness = Integer.MIN_VALUE;
-            //Check all next possible boards
-            for (Board nextBoard : getNextBoards(board, white)) {
-                //Recursive call
-                newFitness = minimax(nextBoard, white, !maximize, alpha, beta, depth - 1);
-                if (newFitness > bestFitness) { //Check if we have new max
-                    bestFitness = newFitness;
-                    //Only set the next move if we are at the top level of the 
-                    //decision tree
-                    if (depth == DEPTH) {
-                        nextMove = new Move(nextBoard.lastMove);
-                    }
-                }
-                //Check if we need to change alpha value
-//                alpha = Math.max(alpha, bestFitness);
-//                if (beta <= alpha) { //Useless branch - don't explore
-//                    return bestFitness;
-//                }
-            }
-            return bestFitness;
-        } else {
-            bestFitness = Integer.MAX_VALUE;
-            //Check all next possible boards
-            for (Board nextBoard : getNextBoards(board, !white)) {
-                //Recursive call
-                newFitness = minimax(nextBoard, white, !maximize, alpha, beta, depth - 1);
-                if (newFitness < bestFitness) { //Check if we have a new min
-                    bestFitness = newFitness;
-                }
-                //Check if we need to change beta value
-//                beta = Math.min(beta, bestFitness);
-//                if (beta <= alpha) { //Useless branch - don't explore
-//                    return bestFitness;
-//                }
-            }
-            return bestFitness;
+    public static Move getNextMove(Board board, Player player, Duration budget) {
+        Move move = bookMove(board, player);
+        if (move != null) {
+            return move;
         }
+        SearchResult result = search(board, player, SearchLimits.time(budget));
+        System.out.println(result.getStats());
+        return result.getMove();
+    }
+
+    /**
+     * Searches a board for a player's move with the shared engine, and keeps
+     * the statistics of the search.
+     *
+     * @param board The board to be searched.
+     * @param player The player to find the next move for.
+     * @param limits Depth and time limits of the search.
+     * @return
+     */
+    private static SearchResult search(Board board, Player player,
+            SearchLimits limits) {
+        Board root = new Board(board);
+        root.setWhiteToMove(player.isWhite());
+        SearchResult result = engine.search(root, limits);
+        counter = result.getNodes();
+        cutoffs = result.getCutoffs();
+        firstMoveCutoffs = result.getFirstMoveCutoffs();
+        completedDepth = result.getDepth();
+        score = result.getScore();
+        stats = result.getStats();
+        return result;
     }
 
     /**
@@ -104,21 +189,13 @@ public class Minimax {
      */
     public static ArrayList<Board> getNextBoards(Board board, boolean white) {
         ArrayList<Board> nextBoards = new ArrayList<>();
-        //For all pieces, for all spaces on the board: 
-        for (Piece p : board.getPlayer(white).getPiecesList()) {
-            for (int x = 0; x < 8; x++) {
-                for (int y = 0; y < 8; y++) {
-                    //Check that move is valid and safe
-                    if (p.isValid(x, y, board)) {
-                        Board b = new Board(board);
-                        if (b.safeMove(b.getPieceAt(p.getRow(), p.getCol()), x, y)) {
-                            //Apply the move
-                            b.move(new Move(b.getPieceAt(p.getRow(), p.getCol()), x, y)); 
-                            nextBoards.add(b);
-                        }
-                    }
-                }
-            }
+        IntMoveList moves = new IntMoveList();
+        //Only the safe destinations of each piece are generated
+        MoveGenerator.generateLegalMoves(board, white, moves);
+        for (int i = 0; i < moves.size(); i++) {
+            Board b = new Board(board);
+            b.move(new Move(moves.get(i))); //Apply the move
+            nextBoards.add(b);
         }
         return nextBoards;
     }
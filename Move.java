@@ -1,14 +1,25 @@
 package chess;
 
 /* Class representing a move. Contains the coordinates of the piece being moved,
-the piece's type, and the coordinates of the destination.                   */
+the piece's type, the coordinates of the destination and, for pawns reaching 
+the last row, the kind of piece the pawn is promoted to. 
+
+The search works with moves packed into a single int instead, laid out as:
+bits 0-5 source square, 6-11 destination square, 12-15 code of the moved piece,
+16-18 kind of the captured piece, 19-21 promotion kind, 22-24 flags. This class
+converts between the two forms.                                              */
 public class Move {
 
+    static final int EN_PASSANT = 1 << 22;
+    static final int CASTLE = 1 << 23;
+    static final int DOUBLE_STEP = 1 << 24;
+
     private final char type;
     private final int row;
     private final int col;
     private final int destRow;
     private final int destCol;
+    private final int promotion;
 
     /**
      * Constructor.
@@ -23,6 +34,24 @@ public class Move {
         this.col = piece.getCol();
         this.destRow = row;
         this.destCol = col;
+        this.promotion = 0;
+    }
+
+    /**
+     * Constructor for a move that promotes a pawn.
+     *
+     * @param piece The piece being moved.
+     * @param row The destination row.
+     * @param col The destination column.
+     * @param promotion Kind of piece the pawn is promoted to (0 for none).
+     */
+    public Move(Piece piece, int row, int col, int promotion) {
+        this.type = piece.getType();
+        this.row = piece.getRow();
+        this.col = piece.getCol();
+        this.destRow = row;
+        this.destCol = col;
+        this.promotion = promotion;
     }
 
     /**
@@ -36,6 +65,153 @@ public class Move {
         this.col = m.getCol();
         this.destRow = m.getDestRow();
         this.destCol = m.getDestCol();
+        this.promotion = m.getPromotion();
+    }
+
+    /**
+     * Constructor - unpacks a move from its int form.
+     *
+     * @param move The packed move.
+     */
+    public Move(int move) {
+        this.type = Piece.typeOf(piece(move));
+        this.row = from(move) >> 3;
+        this.col = from(move) & 7;
+        this.destRow = to(move) >> 3;
+        this.destCol = to(move) & 7;
+        this.promotion = promotion(move);
+    }
+
+    /**
+     * Packs this move into its int form. The board is needed to find the
+     * captured piece and the special move flags. Castling entered as the rook
+     * moving onto its own king is packed as the king moving two spaces.
+     *
+     * @param board The board the move is to be applied to.
+     * @return The packed move.
+     */
+    public int pack(Board board) {
+        Piece p = board.getPieceAt(row, col);
+        Piece target = board.getPieceAt(destRow, destCol);
+        int kind = p.getCode() & 7;
+        int from = row * 8 + col;
+        int to = destRow * 8 + destCol;
+        if (kind == Piece.ROOK && target != null
+                && target.getCode() == (Piece.KING | (p.getCode() & Piece.BLACK))) {
+            from = target.getSquare();
+            to = from + (col < target.getCol() ? -2 : 2);
+            return encode(from, to, target.getCode(), 0, 0, CASTLE);
+        }
+        int captured = (target == null ? 0 : target.getCode() & 7);
+        int flags = 0;
+        if (kind == Piece.PAWN) {
+            if (col != destCol && target == null) {
+                captured = Piece.PAWN;
+                flags = EN_PASSANT;
+            } else if (Math.abs(destRow - row) == 2) {
+                flags = DOUBLE_STEP;
+            }
+        } else if (kind == Piece.KING && Math.abs(destCol - col) == 2) {
+            flags = CASTLE;
+        }
+        return encode(from, to, p.getCode(), captured, promotion, flags);
+    }
+
+    /**
+     * Reads a move written in coordinate notation, eg "e2e4" or "e7e8q". Files
+     * a-h are columns 0-7 and ranks 1-8 are rows 7-0.
+     *
+     * @param text The move in coordinate notation.
+     * @param board The board the move is to be applied to.
+     * @return The move, or null if the text is not a move of a piece on the
+     * board.
+     */
+    public static Move parse(String text, Board board) {
+        if (text.length() < 4) {
+            return null;
+        }
+        int col = text.charAt(0) - 'a';
+        int row = '8' - text.charAt(1);
+        int destCol = text.charAt(2) - 'a';
+        int destRow = '8' - text.charAt(3);
+        if ((row | col | destRow | destCol) >>> 3 != 0
+                || board.getPieceAt(row, col) == null) {
+            return null;
+        }
+        //Promotion piece - 'n' is accepted for the knight as well as 'h'
+        int promotion = 0;
+        if (text.length() > 4) {
+            char c = Character.toLowerCase(text.charAt(4));
+            promotion = (c == 'n' ? Piece.KNIGHT : Piece.kindOf(c));
+        }
+        return new Move(board.getPieceAt(row, col), destRow, destCol, promotion);
+    }
+
+    /**
+     * Packs the parts of a move into an int.
+     *
+     * @param from Source square.
+     * @param to Destination square.
+     * @param piece Code of the piece being moved.
+     * @param captured Kind of the piece being captured (0 for none).
+     * @param promotion Kind of piece a pawn is promoted to (0 for none).
+     * @param flags Combination of EN_PASSANT, CASTLE and DOUBLE_STEP.
+     * @return The packed move.
+     */
+    static int encode(int from, int to, int piece, int captured, int promotion,
+            int flags) {
+        return from | (to << 6) | (piece << 12) | (captured << 16)
+                | (promotion << 19) | flags;
+    }
+
+    /**
+     * Returns the source square of a packed move.
+     *
+     * @param move The packed move.
+     * @return
+     */
+    static int from(int move) {
+        return move & 63;
+    }
+
+    /**
+     * Returns the destination square of a packed move.
+     *
+     * @param move The packed move.
+     * @return
+     */
+    static int to(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    /**
+     * Returns the code of the piece moved by a packed move.
+     *
+     * @param move The packed move.
+     * @return
+     */
+    static int piece(int move) {
+        return (move >>> 12) & 15;
+    }
+
+    /**
+     * Returns the kind of the piece captured by a packed move (0 for none).
+     *
+     * @param move The packed move.
+     * @return
+     */
+    static int captured(int move) {
+        return (move >>> 16) & 7;
+    }
+
+    /**
+     * Returns the promotion kind of a packed move (0 for none).
+     *
+     * @param move The packed move.
+     * @return
+     */
+    static int promotion(int move) {
+        return (move >>> 19) & 7;
     }
 
     /**
@@ -83,6 +259,31 @@ public class Move {
         return this.destCol;
     }
 
+    /**
+     * Returns the kind of piece a pawn is promoted to, or 0 if the move is not
+     * a promotion.
+     *
+     * @return
+     */
+    public int getPromotion() {
+        return this.promotion;
+    }
+
+    /**
+     * Writes the move in coordinate notation, eg "e2e4" or "e7e8q", as read by
+     * parse().
+     *
+     * @return
+     */
+    public String toCoordinate() {
+        String s = "" + (char) ('a' + col) + (char) ('8' - row)
+                + (char) ('a' + destCol) + (char) ('8' - destRow);
+        if (promotion != 0) {
+            s += " pnbrqk".charAt(promotion);
+        }
+        return s;
+    }
+
     /**
      * Returns a string containing the piece being moved, and the destination
      * coordinates.
@@ -0,0 +1,397 @@
+package chess;
+
+/* Class that generates the pseudo-legal moves for a player, ie every move that
+follows the movement rules of the pieces, without testing whether the move
+leaves the player's own king in check. Only reachable destinations are visited:
+knights and kings use the precomputed attack tables, sliders use ray attacks.
+Moves are written in their packed int form into a caller-supplied buffer.
+Captures and promotions can also be generated on their own, for the quiescence
+search.
+
+Legal moves are generated without making them: the pieces giving check and the
+pieces pinned to the king are found once, and the destinations of every other
+piece are masked with them. In check, only captures of the checker and moves
+onto the squares between it and the king are generated, and in double check
+only king moves. Kings only move to squares outside the other player's attack
+map, which the board works out once per position. En passant, which removes
+two pieces from a row, is tested on its own.                                 */
+public class MoveGenerator {
+
+    /**
+     * Adds all pseudo-legal moves for a player to the given buffer.
+     *
+     * @param board The board to generate moves on.
+     * @param white Boolean indicating which player to generate moves for.
+     * @param moves Buffer that the moves are added to.
+     * @return The number of moves added.
+     */
+    public static int generateMoves(Board board, boolean white, IntMoveList moves) {
+        return generate(board, white, true, moves);
+    }
+
+    /**
+     * Adds the pseudo-legal captures and promotions for a player to the given
+     * buffer. Castling and other quiet moves are left out.
+     *
+     * @param board The board to generate moves on.
+     * @param white Boolean indicating which player to generate moves for.
+     * @param moves Buffer that the moves are added to.
+     * @return The number of moves added.
+     */
+    public static int generateCaptures(Board board, boolean white, IntMoveList moves) {
+        return generate(board, white, false, moves);
+    }
+
+    /**
+     * Adds all legal moves for a player to the given buffer.
+     *
+     * @param board The board to generate moves on.
+     * @param white Boolean indicating which player to generate moves for.
+     * @param moves Buffer that the moves are added to.
+     * @return The number of moves added.
+     */
+    public static int generateLegalMoves(Board board, boolean white,
+            IntMoveList moves) {
+        return generate(board, white, true, true, moves);
+    }
+
+    /**
+     * Adds the legal captures and promotions for a player to the given
+     * buffer.
+     *
+     * @param board The board to generate moves on.
+     * @param white Boolean indicating which player to generate moves for.
+     * @param moves Buffer that the moves are added to.
+     * @return The number of moves added.
+     */
+    public static int generateLegalCaptures(Board board, boolean white,
+            IntMoveList moves) {
+        return generate(board, white, false, true, moves);
+    }
+
+    /**
+     * Adds the pseudo-legal moves for a player, with or without quiet moves.
+     *
+     * @param board The board to generate moves on.
+     * @param white Boolean indicating which player to generate moves for.
+     * @param quiet Boolean indicating whether quiet moves are included.
+     * @param moves Buffer that the moves are added to.
+     * @return The number of moves added.
+     */
+    private static int generate(Board board, boolean white, boolean quiet,
+            IntMoveList moves) {
+        return generate(board, white, quiet, false, moves);
+    }
+
+    /**
+     * Adds the moves for a player, with or without quiet moves, and either
+     * all pseudo-legal moves or only the legal ones.
+     *
+     * @param board The board to generate moves on.
+     * @param white Boolean indicating which player to generate moves for.
+     * @param quiet Boolean indicating whether quiet moves are included.
+     * @param legal Boolean indicating whether only legal moves are added.
+     * @param moves Buffer that the moves are added to.
+     * @return The number of moves added.
+     */
+    private static int generate(Board board, boolean white, boolean quiet,
+            boolean legal, IntMoveList moves) {
+        int size = moves.size();
+        int us = white ? 0 : Piece.BLACK;
+        long own = board.colours[white ? 0 : 1];
+        long enemy = board.colours[white ? 1 : 0];
+        long occupied = own | enemy;
+        long targets = quiet ? ~own : enemy;
+        int king = board.kingSquare(white);
+        long evasions = ~0L; //Destinations that get out of check
+        long pinned = 0;
+        legal &= king < 64;
+        if (legal) {
+            if ((board.attackedSquares(!white) & (1L << king)) != 0) { //In check
+                long checkers = board.attackersTo(king, occupied) & enemy;
+                if ((checkers & (checkers - 1)) != 0) { //Double check
+                    //Only the king can move
+                    addKingMoves(board, white, king, targets, moves);
+                    return moves.size() - size;
+                }
+                //Capture the checker, or block it
+                int checker = Long.numberOfTrailingZeros(checkers);
+                evasions = checkers | Bitboard.BETWEEN[king][checker];
+            }
+            pinned = pinned(board, white, king, own, occupied);
+        }
+
+        generatePawnMoves(board, white, quiet, legal, enemy, occupied, evasions,
+                pinned, moves);
+        targets &= evasions;
+        long pieces = board.bitboards[Piece.KNIGHT | us] & ~pinned; //Never move
+        while (pieces != 0) {
+            int from = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            addMoves(board, from, Bitboard.KNIGHT_ATTACKS[from] & targets, moves);
+        }
+        pieces = board.bitboards[Piece.BISHOP | us];
+        while (pieces != 0) {
+            int from = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            addMoves(board, from, Bitboard.bishopAttacks(occupied, from) & targets
+                    & pinMask(from, pinned, king), moves);
+        }
+        pieces = board.bitboards[Piece.ROOK | us];
+        while (pieces != 0) {
+            int from = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            addMoves(board, from, Bitboard.rookAttacks(occupied, from) & targets
+                    & pinMask(from, pinned, king), moves);
+        }
+        pieces = board.bitboards[Piece.QUEEN | us];
+        while (pieces != 0) {
+            int from = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            addMoves(board, from, Bitboard.queenAttacks(occupied, from) & targets
+                    & pinMask(from, pinned, king), moves);
+        }
+        if (king < 64) {
+            if (legal) {
+                addKingMoves(board, white, king, quiet ? ~own : enemy, moves);
+            } else {
+                addMoves(board, king, Bitboard.KING_ATTACKS[king] & targets, moves);
+            }
+            if (quiet && evasions == ~0L) { //Never out of check
+                generateCastling(board, white, king, occupied, moves);
+            }
+        }
+        return moves.size() - size;
+    }
+
+    /**
+     * Returns the pieces of a player that are pinned to its king: the only
+     * piece between the king and an enemy bishop, rook or queen on a line
+     * with it.
+     *
+     * @param board The board.
+     * @param white Boolean indicating which player's pieces to find.
+     * @param king Square of the player's king.
+     * @param own Bitboard of the player's pieces.
+     * @param occupied Bitboard of all occupied squares.
+     * @return
+     */
+    private static long pinned(Board board, boolean white, int king, long own,
+            long occupied) {
+        int them = white ? Piece.BLACK : 0;
+        long queens = board.bitboards[Piece.QUEEN | them];
+        //Enemy sliders that would attack the king on an empty board
+        long snipers = (Bitboard.rookAttacks(0, king)
+                & (board.bitboards[Piece.ROOK | them] | queens))
+                | (Bitboard.bishopAttacks(0, king)
+                & (board.bitboards[Piece.BISHOP | them] | queens));
+        long pinned = 0;
+        while (snipers != 0) {
+            int sq = Long.numberOfTrailingZeros(snipers);
+            snipers &= snipers - 1;
+            long between = Bitboard.BETWEEN[king][sq] & occupied;
+            if (between != 0 && (between & (between - 1)) == 0) {
+                pinned |= between & own;
+            }
+        }
+        return pinned;
+    }
+
+    /**
+     * Returns the squares a piece may move to without exposing its king: the
+     * line through the king if the piece is pinned, otherwise every square.
+     *
+     * @param from Square of the piece.
+     * @param pinned Bitboard of the pinned pieces.
+     * @param king Square of the king.
+     * @return
+     */
+    private static long pinMask(int from, long pinned, int king) {
+        return ((pinned & (1L << from)) == 0 ? ~0L : Bitboard.LINE[king][from]);
+    }
+
+    /**
+     * Adds the king moves to squares that are not attacked. The attack map
+     * sees through the king, so that it cannot hide behind itself from a
+     * slider checking it.
+     *
+     * @param board The board to generate moves on.
+     * @param white Boolean indicating which player to generate moves for.
+     * @param king Square of the king.
+     * @param targets Bitboard of the squares the king may move to.
+     * @param moves Buffer that the moves are added to.
+     */
+    private static void addKingMoves(Board board, boolean white, int king,
+            long targets, IntMoveList moves) {
+        addMoves(board, king, Bitboard.KING_ATTACKS[king] & targets
+                & ~board.attackedSquares(!white), moves);
+    }
+
+    /**
+     * Adds the pawn moves (single and double steps, captures, en passant and
+     * promotions) for a player. Without quiet moves, only captures and
+     * promotions are added.
+     *
+     * @param board The board to generate moves on.
+     * @param white Boolean indicating which player to generate moves for.
+     * @param quiet Boolean indicating whether quiet moves are included.
+     * @param legal Boolean indicating whether only legal moves are added.
+     * @param enemy Bitboard of the other player's pieces.
+     * @param occupied Bitboard of all occupied squares.
+     * @param evasions Bitboard of the destinations that get out of check.
+     * @param pinned Bitboard of the player's pinned pieces.
+     * @param moves Buffer that the moves are added to.
+     */
+    private static void generatePawnMoves(Board board, boolean white,
+            boolean quiet, boolean legal, long enemy, long occupied,
+            long evasions, long pinned, IntMoveList moves) {
+        int code = Piece.PAWN | (white ? 0 : Piece.BLACK);
+        long pawns = board.bitboards[code];
+        int step = white ? -8 : 8; //White pawns move North
+        int startRow = white ? 6 : 1;
+        int lastRow = white ? 0 : 7;
+        int king = board.kingSquare(white);
+        long captureTargets = enemy;
+        if (board.getEnPassant() >= 0) {
+            captureTargets |= 1L << board.getEnPassant();
+        }
+        while (pawns != 0) {
+            int from = Long.numberOfTrailingZeros(pawns);
+            pawns &= pawns - 1;
+            long allowed = evasions & pinMask(from, pinned, king);
+            int to = from + step;
+            if ((quiet || to >> 3 == lastRow) && to >= 0 && to < 64
+                    && (occupied & (1L << to)) == 0) {
+                if ((allowed & (1L << to)) != 0) {
+                    addPawnMove(board, from, to, 0, moves);
+                }
+                //Two spaces forward - both spaces must be empty
+                if (quiet && from >> 3 == startRow && (occupied & (1L << (to + step))) == 0
+                        && (allowed & (1L << (to + step))) != 0) {
+                    moves.add(Move.encode(from, to + step, code, 0, 0,
+                            Move.DOUBLE_STEP));
+                }
+            }
+            long attacks = Bitboard.PAWN_ATTACKS[white ? 0 : 1][from] & captureTargets;
+            while (attacks != 0) {
+                to = Long.numberOfTrailingZeros(attacks);
+                attacks &= attacks - 1;
+                if (to == board.getEnPassant()) {
+                    if (!legal || enPassantLegal(board, white, from, to, king,
+                            occupied)) {
+                        moves.add(Move.encode(from, to, code, Piece.PAWN, 0,
+                                Move.EN_PASSANT));
+                    }
+                } else if ((allowed & (1L << to)) != 0) {
+                    addPawnMove(board, from, to, board.mailbox[to].getCode() & 7,
+                            moves);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether an en passant capture leaves the king safe. Both pawns
+     * leave the row the king may be on, and the captured pawn may be the one
+     * giving check, so the attacks on the king are tested with the pawns
+     * moved.
+     *
+     * @param board The board.
+     * @param white Boolean indicating which player is capturing.
+     * @param from Square the pawn moves from.
+     * @param to Square the pawn moves to.
+     * @param king Square of the player's king.
+     * @param occupied Bitboard of all occupied squares.
+     * @return
+     */
+    private static boolean enPassantLegal(Board board, boolean white, int from,
+            int to, int king, long occupied) {
+        int captured = (from & ~7) | (to & 7); //Beside the moving pawn
+        long after = (occupied & ~(1L << from) & ~(1L << captured)) | (1L << to);
+        return (board.attackersTo(king, after) & board.colours[white ? 1 : 0]) == 0;
+    }
+
+    /**
+     * Adds a pawn move, expanding it into the four promotions if the pawn
+     * reaches the last row.
+     *
+     * @param board The board to generate moves on.
+     * @param from Square the pawn moves from.
+     * @param to Square the pawn moves to.
+     * @param captured Kind of the piece being captured (0 for none).
+     * @param moves Buffer that the moves are added to.
+     */
+    private static void addPawnMove(Board board, int from, int to, int captured,
+            IntMoveList moves) {
+        int code = board.mailbox[from].getCode();
+        int row = to >> 3;
+        if (row == 0 || row == 7) {
+            for (int kind = Piece.QUEEN; kind >= Piece.KNIGHT; kind--) {
+                moves.add(Move.encode(from, to, code, captured, kind, 0));
+            }
+        } else {
+            moves.add(Move.encode(from, to, code, captured, 0, 0));
+        }
+    }
+
+    /**
+     * Adds a move from a square to each square in a bitboard of destinations.
+     *
+     * @param board The board to generate moves on.
+     * @param from Square of the piece being moved.
+     * @param destinations Bitboard of destination squares.
+     * @param moves Buffer that the moves are added to.
+     */
+    private static void addMoves(Board board, int from, long destinations,
+            IntMoveList moves) {
+        int code = board.mailbox[from].getCode();
+        while (destinations != 0) {
+            int to = Long.numberOfTrailingZeros(destinations);
+            destinations &= destinations - 1;
+            Piece target = board.mailbox[to];
+            moves.add(Move.encode(from, to, code,
+                    (target == null ? 0 : target.getCode() & 7), 0, 0));
+        }
+    }
+
+    /**
+     * Adds the castling moves for a player. The king may not castle out of,
+     * through, or into check, and the spaces between it and the rook must be
+     * empty. Castling is encoded as the king moving two spaces.
+     *
+     * @param board The board to generate moves on.
+     * @param white Boolean indicating which player to generate moves for.
+     * @param king Square of the player's king.
+     * @param occupied Bitboard of all occupied squares.
+     * @param moves Buffer that the moves are added to.
+     */
+    private static void generateCastling(Board board, boolean white, int king,
+            long occupied, IntMoveList moves) {
+        int rights = board.getCastling()
+                & (white ? Board.CASTLE_WHITE_EAST | Board.CASTLE_WHITE_WEST
+                        : Board.CASTLE_BLACK_EAST | Board.CASTLE_BLACK_WEST);
+        //Board.fromFen() only keeps rights for a king on its starting square
+        if (rights == 0 || king != (white ? 60 : 4)) {
+            return;
+        }
+        long attacked = board.attackedSquares(!white);
+        if ((attacked & (1L << king)) != 0) {
+            return;
+        }
+        int us = white ? 0 : Piece.BLACK;
+        long rooks = board.bitboards[Piece.ROOK | us];
+        int corner = king - 4; //Square of the West rook
+        if ((rights & (Board.CASTLE_WHITE_EAST | Board.CASTLE_BLACK_EAST)) != 0
+                && (rooks & (1L << (corner + 7))) != 0
+                && (occupied & (3L << (king + 1))) == 0
+                && (attacked & (3L << (king + 1))) == 0) {
+            moves.add(Move.encode(king, king + 2, Piece.KING | us, 0, 0, Move.CASTLE));
+        }
+        if ((rights & (Board.CASTLE_WHITE_WEST | Board.CASTLE_BLACK_WEST)) != 0
+                && (rooks & (1L << corner)) != 0
+                && (occupied & (7L << (corner + 1))) == 0
+                && (attacked & (3L << (king - 2))) == 0) {
+            moves.add(Move.encode(king, king - 2, Piece.KING | us, 0, 0, Move.CASTLE));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package chess;
+
+/* Class containing the move ordering stage that sits between move generation
+and the search. Alpha-beta pruning cuts off the most branches when the best
+move is searched first, so moves are ranked as: the hash move from the 
+transposition table, captures by most valuable victim / least valuable attacker
+(MVV-LVA), the two killer moves for the depth (quiet moves that caused a cutoff
+in a sibling node), then the remaining quiet moves by the history table (how
+often a piece moving to a square has caused a cutoff). Killers and history are
+learnt during a search, so each search thread keeps its own MoveOrdering.    */
+public class MoveOrdering {
+
+    static final int HASH_MOVE = 1_000_000;
+    static final int CAPTURE = 100_000;
+    static final int KILLER = 90_000;
+    static final int HISTORY_MAX = 80_000; //History scores stay below killers
+
+    //Two killer moves per depth, indexed by [ply][slot]
+    int[][] killers = new int[Engine.MAX_DEPTH + 1][2];
+    //Indexed by [piece code][destination square]
+    int[][] history = new int[16][64];
+
+    /**
+     * Ranks the moves in a list, storing each move's rank in the list.
+     *
+     * @param moves The moves to rank.
+     * @param hashMove Best move from the transposition table (or 0).
+     * @param ply Distance from the root of the search.
+     */
+    void score(IntMoveList moves, int hashMove, int ply) {
+        int[] killer = killers[ply];
+        for (int i = 0; i < moves.size(); i++) {
+            int m = moves.get(i);
+            int rank;
+            if (m == hashMove) {
+                rank = HASH_MOVE;
+            } else if (Move.captured(m) != 0 || Move.promotion(m) != 0) {
+                rank = CAPTURE + captureRank(m);
+            } else if (m == killer[0]) {
+                rank = KILLER + 1;
+            } else if (m == killer[1]) {
+                rank = KILLER;
+            } else {
+                rank = history[Move.piece(m)][Move.to(m)];
+            }
+            moves.scores[i] = rank;
+        }
+    }
+
+    /**
+     * Ranks a list of captures and promotions, as generated for the quiescence
+     * search.
+     *
+     * @param moves The moves to rank.
+     */
+    static void scoreCaptures(IntMoveList moves) {
+        for (int i = 0; i < moves.size(); i++) {
+            moves.scores[i] = captureRank(moves.get(i));
+        }
+    }
+
+    /**
+     * Returns the rank of a capture or promotion among the others: most
+     * valuable victim first, then least valuable attacker.
+     *
+     * @param m The packed move.
+     * @return
+     */
+    private static int captureRank(int m) {
+        return Move.captured(m) * 16 + Move.promotion(m) * 8 - (Move.piece(m) & 7);
+    }
+
+    /**
+     * Moves the highest ranked of the remaining moves to the given index and
+     * returns it. Selecting one move at a time is cheaper than a full sort
+     * when a cutoff happens after the first few moves.
+     *
+     * @param moves The ranked moves.
+     * @param i Index of the next move to search.
+     * @return The next move to search.
+     */
+    static int next(IntMoveList moves, int i) {
+        int best = i;
+        for (int j = i + 1; j < moves.size(); j++) {
+            if (moves.scores[j] > moves.scores[best]) {
+                best = j;
+            }
+        }
+        if (best != i) {
+            moves.swap(i, best);
+        }
+        return moves.get(i);
+    }
+
+    /**
+     * Records a move that caused a beta cutoff. Quiet moves become killer
+     * moves for the depth and gain history.
+     *
+     * @param move The move that caused the cutoff.
+     * @param ply Distance from the root of the search.
+     * @param depth Depth left at the node.
+     */
+    void cutoff(int move, int ply, int depth) {
+        if (Move.captured(move) != 0 || Move.promotion(move) != 0) {
+            return; //Captures are already ranked well
+        }
+        int[] killer = killers[ply];
+        if (killer[0] != move) {
+            killer[1] = killer[0];
+            killer[0] = move;
+        }
+        int[] squares = history[Move.piece(move)];
+        squares[Move.to(move)] += depth * depth;
+        if (squares[Move.to(move)] >= HISTORY_MAX) {
+            ageHistory();
+        }
+    }
+
+    /**
+     * Prepares for a new search: killer moves are cleared, and history is
+     * halved so that it favours recent cutoffs.
+     */
+    void newSearch() {
+        for (int[] killer : killers) {
+            killer[0] = 0;
+            killer[1] = 0;
+        }
+        ageHistory();
+    }
+
+    /**
+     * Halves every entry of the history table.
+     */
+    private void ageHistory() {
+        for (int[] squares : history) {
+            for (int sq = 0; sq < 64; sq++) {
+                squares[sq] >>= 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package chess;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/* Opening book, looked up before searching so that well known openings are
+played without a search. The book is a file in the Polyglot layout: 16-byte
+entries, sorted by key, each holding a 64-bit board key, a 16-bit move, a 16-bit
+weight and 32 bits of learning data (unused), all big-endian. A move is written
+as to file (bits 0-2), to rank (3-5), from file (6-8), from rank (9-11) and
+promotion piece (12-14: 1 knight to 4 queen), with castling written as the king
+moving onto its own rook.
+
+The file is memory-mapped rather than read, so a book of any size costs no heap
+and a lookup only touches the pages of the entries it reads: the first entry for
+the board is found by binary search, and the entries after it with the same key
+are its moves. A move is then picked at random with probability in proportion
+to its weight, or the heaviest is always picked.
+
+The keys are the standard Polyglot ones (see PolyglotKey), so books made by
+other programs can be read. Books can also be built with the build mode below,
+from games given as moves in coordinate notation, one game per line; the weight
+of a move is then the number of games it was played in.
+
+Usage: java chess.OpeningBook build <games> <book> [plies]
+       java chess.OpeningBook probe <book> [FEN]                             */
+public class OpeningBook {
+
+    static final int ENTRY_SIZE = 16;
+    private static final int MAX_WEIGHT = 0xffff;
+    private final ByteBuffer entries; //The mapped file
+    private final int size; //Number of entries
+    private final Random random = new Random();
+    private boolean heaviest; //Always pick the heaviest move, never at random
+    private final IntMoveList legal = new IntMoveList(); //Used by lookup()
+
+    /**
+     * Constructor.
+     *
+     * @param entries The entries of the book.
+     */
+    private OpeningBook(ByteBuffer entries) {
+        this.entries = entries;
+        this.size = entries.capacity() / ENTRY_SIZE;
+    }
+
+    /**
+     * Opens a book file, mapping it into memory. The mapping stays valid after
+     * the file is closed, so nothing needs to be closed afterwards.
+     *
+     * @param file The book file.
+     * @return The book.
+     * @throws IOException If the file cannot be read, or is larger than 2 GB.
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long length = channel.size() - channel.size() % ENTRY_SIZE;
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Book too large: " + file);
+            }
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    length));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 3 && args[0].equals("build")) {
+            int entries;
+            try (BufferedReader games = Files.newBufferedReader(
+                    Paths.get(args[1]))) {
+                entries = build(games, Paths.get(args[2]),
+                        (args.length > 3 ? Integer.parseInt(args[3]) : 20));
+            }
+            System.out.println("Wrote " + entries + " entries to " + args[2]);
+        } else if (args.length >= 2 && args[0].equals("probe")) {
+            OpeningBook book = open(Paths.get(args[1]));
+            Board board = (args.length > 2 ? Board.fromFen(String.join(" ",
+                    Arrays.copyOfRange(args, 2, args.length))) : new Board());
+            IntMoveList legal = new IntMoveList();
+            MoveGenerator.generateLegalMoves(board, board.isWhiteToMove(), legal);
+            long key = PolyglotKey.key(board);
+            for (int i = book.find(key); i < book.size && book.key(i) == key;
+                    i++) {
+                int move = toMove(board, legal, book.move(i));
+                System.out.println((move == 0 ? "illegal"
+                        : new Move(move).toCoordinate()) + " " + book.weight(i));
+            }
+        } else {
+            System.out.println("Usage: java chess.OpeningBook build <games> <book>"
+                    + " [plies]\n       java chess.OpeningBook probe <book> [FEN]");
+        }
+    }
+
+    /**
+     * Sets how a move is picked when the board has more than one: at random,
+     * in proportion to the weights (the default), or always the heaviest.
+     *
+     * @param heaviest Boolean indicating whether the heaviest move is picked.
+     */
+    public synchronized void setHeaviest(boolean heaviest) {
+        this.heaviest = heaviest;
+    }
+
+    /**
+     * Returns the number of entries in the book.
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Looks up a move for the player to move. Moves in the book that are not
+     * legal on the board (eg from a key collision) are passed over.
+     *
+     * @param board The board to find a move for. It is not changed.
+     * @return The packed move, or 0 if the board is not in the book.
+     */
+    public synchronized int lookup(Board board) {
+        long key = PolyglotKey.key(board);
+        int first = find(key);
+        if (first == size || key(first) != key) {
+            return 0;
+        }
+        legal.clear();
+        MoveGenerator.generateLegalMoves(board, board.isWhiteToMove(), legal);
+        int chosen = 0;
+        int chosenWeight = -1;
+        long total = 0; //Of the weights of the legal moves seen so far
+        for (int i = first; i < size && key(i) == key; i++) {
+            int move = toMove(board, legal, move(i));
+            if (move == 0) {
+                continue;
+            }
+            int weight = weight(i);
+            total += weight;
+            //At random, the move replaces the one chosen with probability
+            //weight / total, which leaves each move chosen in proportion to
+            //its weight once all are seen
+            if (heaviest ? weight > chosenWeight
+                    : (chosen == 0 || random.nextDouble() * total < weight)) {
+                chosen = move;
+                chosenWeight = weight;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Finds the first entry with the given key, or where it would be.
+     *
+     * @param key The key of a board.
+     * @return Index of the entry.
+     */
+    int find(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(key(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the key of an entry.
+     *
+     * @param i Index of the entry.
+     * @return
+     */
+    long key(int i) {
+        return entries.getLong(i * ENTRY_SIZE);
+    }
+
+    /**
+     * Returns the move of an entry, in the book's form.
+     *
+     * @param i Index of the entry.
+     * @return
+     */
+    int move(int i) {
+        return entries.getShort(i * ENTRY_SIZE + 8) & 0xffff;
+    }
+
+    /**
+     * Returns the weight of an entry.
+     *
+     * @param i Index of the entry.
+     * @return
+     */
+    int weight(int i) {
+        return entries.getShort(i * ENTRY_SIZE + 10) & 0xffff;
+    }
+
+    /**
+     * Converts a move from the book's form into the legal packed move it
+     * stands for.
+     *
+     * @param board The board the move is for.
+     * @param legal The legal moves on the board.
+     * @param bookMove The move in the book's form.
+     * @return The packed move, or 0 if it is not legal.
+     */
+    private static int toMove(Board board, IntMoveList legal, int bookMove) {
+        int to = square(bookMove & 63);
+        int from = square((bookMove >>> 6) & 63);
+        int promotion = (bookMove >>> 12) & 7;
+        Piece p = board.mailbox[from];
+        Piece target = board.mailbox[to];
+        if (p != null && target != null && (p.getCode() & 7) == Piece.KING
+                && target.getCode() == (Piece.ROOK | (p.getCode() & Piece.BLACK))) {
+            to = from + (to > from ? 2 : -2); //Castling
+        }
+        for (int i = 0; i < legal.size(); i++) {
+            int m = legal.get(i);
+            if (Move.from(m) == from && Move.to(m) == to
+                    && Move.promotion(m) == (promotion == 0 ? 0 : promotion + 1)) {
+                return m;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Converts a packed move into the book's form.
+     *
+     * @param move The packed move.
+     * @return
+     */
+    static int toBookMove(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        if ((move & Move.CASTLE) != 0) { //Written as the king taking its rook
+            to = (to > from ? from + 3 : from - 4);
+        }
+        int promotion = Move.promotion(move);
+        return square(to) | (square(from) << 6)
+                | ((promotion == 0 ? 0 : promotion - 1) << 12);
+    }
+
+    /**
+     * Converts a square between this engine's numbering (row 0 is Black's back
+     * rank) and the book's (rank * 8 + file, rank 0 being White's back rank).
+     * The conversion is its own inverse.
+     *
+     * @param sq The square.
+     * @return
+     */
+    static int square(int sq) {
+        return sq ^ 56;
+    }
+
+    /**
+     * Builds a book from games and writes it to a file. Each line of the
+     * input is one game, given as the moves played from the initial board in
+     * coordinate notation; blank lines and lines starting with '#' are
+     * skipped, and a game is cut short at its first illegal move.
+     *
+     * @param games Reader of the games.
+     * @param file The book file to write.
+     * @param plies Number of moves (by either player) taken from each game.
+     * @return The number of entries written.
+     */
+    public static int build(BufferedReader games, Path file, int plies)
+            throws IOException {
+        Map<Long, Map<Integer, Integer>> counts = new HashMap<>();
+        IntMoveList legal = new IntMoveList();
+        for (String line = games.readLine(); line != null;
+                line = games.readLine()) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            Board board = new Board();
+            String[] moves = line.trim().split(" +");
+            for (int i = 0; i < Math.min(plies, moves.length); i++) {
+                Move move = Move.parse(moves[i], board);
+                int packed = (move == null ? 0 : move.pack(board));
+                legal.clear();
+                MoveGenerator.generateLegalMoves(board, board.isWhiteToMove(),
+                        legal);
+                if (packed == 0 || !legal.contains(packed)) {
+                    break;
+                }
+                counts.computeIfAbsent(PolyglotKey.key(board),
+                        k -> new HashMap<>())
+                        .merge(toBookMove(packed), 1, Integer::sum);
+                board.makeMove(packed, new UndoInfo());
+            }
+        }
+        List<Long> keys = new ArrayList<>(counts.keySet());
+        keys.sort(Long::compareUnsigned);
+        int entries = 0;
+        try (DataOutputStream out = new DataOutputStream(
+                Files.newOutputStream(file))) {
+            for (long key : keys) {
+                List<Map.Entry<Integer, Integer>> moves
+                        = new ArrayList<>(counts.get(key).entrySet());
+                moves.sort((a, b) -> b.getValue() - a.getValue()); //Heaviest first
+                for (Map.Entry<Integer, Integer> move : moves) {
+                    out.writeLong(key);
+                    out.writeShort(move.getKey());
+                    out.writeShort(Math.min(move.getValue(), MAX_WEIGHT));
+                    out.writeInt(0); //Learning data
+                    entries++;
+                }
+            }
+        }
+        return entries;
+    }
+}
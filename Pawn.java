@@ -80,28 +80,12 @@ public class Pawn extends Piece {
                     return true;
                 }
             }
-        } /*En Passant check - Check that move is diagonally forward, that there is
-        an enemy piece on the same row as this piece that has only moved once,
-        and that the enemy piece has moved two spaces.
+        } /*En Passant check - Check that move is diagonally forward onto the
+        space that the last move's pawn skipped over when moving two spaces.
          */ else if (Math.abs(numXMovement) == 1 && Math.abs(numYMovement) == 1
-                && board.occupied(this.getRow(), destY) == true) {
-            if (this.isWhite() && this.getRow() == 3
-                    && !board.getPieceAt(this.getRow(), destY).isWhite()
-                    && board.getPieceAt(this.getRow(), destY).getType() == 'P') {
-                if (numXMovement == 1
-                        && board.getPieceAt(this.getRow(), destY).getNumMoves()
-                        / 2 == 1) {
-                    return true;
-                }
-            } else if (!this.isWhite() && this.getRow() == 4
-                    && board.getPieceAt(this.getRow(), destY).isWhite()
-                    && board.getPieceAt(this.getRow(), destY).getType() == 'p') {
-                if (numXMovement == -1
-                        && board.getPieceAt(this.getRow(), destY).getNumMoves()
-                        / 2 == 1) {
-                    return true;
-                }
-            }
+                && destX * 8 + destY == board.getEnPassant()) {
+            //Check that piece is moving in the correct direction
+            return this.isWhite() ? numXMovement == 1 : numXMovement == -1;
         }
         return false;
     }
@@ -0,0 +1,169 @@
+package chess;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/* Move generation test and benchmark. perft counts the leaves of the tree of
+legal moves from a position to a fixed depth; the counts for the standard
+positions below are known, so any difference points at a move generation bug
+(castling, en passant, promotions, pins). divide splits the count by root move,
+so a wrong count can be narrowed down to the move it comes from.
+
+At the last ply the legal moves are only counted, not made, so the suite also
+serves as the move generation throughput benchmark. The "boards"
+mode counts through Board.getNextBoards instead, which copies a board for every
+move, to compare the two.
+
+Usage: java chess.Perft [max depth]
+       java chess.Perft divide <depth> [FEN]
+       java chess.Perft boards [max depth]                                  */
+public class Perft {
+
+    //Test positions, with the leaf counts at depth 1, 2, ...
+    static final String[][] SUITE = {
+        {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "20 400 8902 197281 4865609"},
+        {"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "48 2039 97862 4085603"},
+        {"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "14 191 2812 43238 674624"},
+        {"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            "6 264 9467 422333"},
+        {"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            "44 1486 62379 2103487"},
+        {"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+            "46 2079 89890 3894594"},
+        //Castling rights in the FEN without the king or rook on its square
+        {"3k2r1/8/8/8/8/8/8/4K3 b k - 0 1", "15 67 1226 6665 126128"},
+        {"4k3/8/8/8/8/8/8/3K2R1 w K - 0 1", "15 67 1226 6665 126128"}
+    };
+
+    //Move buffers and undo objects for each ply, reused between nodes
+    private final IntMoveList[] moveLists = new IntMoveList[Engine.MAX_DEPTH + 1];
+    private final UndoInfo[] undos = new UndoInfo[Engine.MAX_DEPTH + 1];
+
+    /**
+     * Constructor.
+     */
+    public Perft() {
+        for (int i = 0; i <= Engine.MAX_DEPTH; i++) {
+            moveLists[i] = new IntMoveList();
+            undos[i] = new UndoInfo();
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length > 1 && args[0].equals("divide")) {
+            Board board = Board.fromFen(args.length > 2 ? String.join(" ",
+                    Arrays.copyOfRange(args, 2, args.length)) : SUITE[0][0]);
+            new Perft().divide(board, Integer.parseInt(args[1]));
+            return;
+        }
+        boolean boards = (args.length > 0 && args[0].equals("boards"));
+        int maxDepth = (args.length > (boards ? 1 : 0)
+                ? Integer.parseInt(args[boards ? 1 : 0]) : (boards ? 3 : 5));
+        Perft perft = new Perft();
+        boolean passed = true;
+        long total = 0;
+        long start = System.nanoTime();
+        for (String[] position : SUITE) {
+            String[] expected = position[1].split(" ");
+            int depth = Math.min(maxDepth, expected.length);
+            Board board = Board.fromFen(position[0]);
+            long begin = System.nanoTime();
+            long count = (boards ? countBoards(board, board.isWhiteToMove(), depth)
+                    : perft.count(board, depth));
+            double elapsed = (System.nanoTime() - begin) / 1e9;
+            boolean match = count == Long.parseLong(expected[depth - 1]);
+            passed &= match;
+            total += count;
+            System.out.printf("%s depth %d: %d leaves (expected %s), %.2fs,"
+                    + " %.0f leaves/s  [%s]%n", (match ? "OK  " : "FAIL"), depth,
+                    count, expected[depth - 1], elapsed, count / elapsed,
+                    position[0]);
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Total: %d leaves in %.2fs, %.0f leaves/s%n", total,
+                elapsed, total / elapsed);
+        if (!passed) {
+            System.out.println("Leaf counts differ from the expected counts.");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Counts the leaves of the tree of legal moves from a board.
+     *
+     * @param board The board to count from. It is left as it was.
+     * @param depth Depth of the tree.
+     * @return
+     */
+    public long count(Board board, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        boolean white = board.isWhiteToMove();
+        IntMoveList moves = moveLists[depth];
+        UndoInfo undo = undos[depth];
+        moves.clear();
+        MoveGenerator.generateLegalMoves(board, white, moves);
+        if (depth == 1) { //At the last ply the moves are only counted
+            return moves.size();
+        }
+        long count = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            int m = moves.get(i);
+            board.makeMove(m, undo);
+            count += count(board, depth - 1);
+            board.unmakeMove(m, undo);
+        }
+        return count;
+    }
+
+    /**
+     * Prints the leaf count below each legal move from a board, and the total.
+     *
+     * @param board The board to count from.
+     * @param depth Depth of the tree.
+     */
+    public void divide(Board board, int depth) {
+        boolean white = board.isWhiteToMove();
+        IntMoveList moves = new IntMoveList();
+        MoveGenerator.generateLegalMoves(board, white, moves);
+        UndoInfo undo = new UndoInfo();
+        long total = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < moves.size(); i++) {
+            int m = moves.get(i);
+            board.makeMove(m, undo);
+            long count = count(board, depth - 1);
+            total += count;
+            System.out.println(new Move(m).toCoordinate() + ": " + count);
+            board.unmakeMove(m, undo);
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Total: %d leaves in %.2fs, %.0f leaves/s%n", total,
+                elapsed, total / elapsed);
+    }
+
+    /**
+     * Counts the leaves of the tree of legal moves from a board, using
+     * Board.getNextBoards().
+     *
+     * @param board The board to count from.
+     * @param white Boolean indicating which player is to move.
+     * @param depth Depth of the tree.
+     * @return
+     */
+    static long countBoards(Board board, boolean white, int depth) {
+        ArrayList<Board> nextBoards = board.getNextBoards(white);
+        if (depth == 1) {
+            return nextBoards.size();
+        }
+        long count = 0;
+        for (Board b : nextBoards) {
+            count += countBoards(b, !white, depth - 1);
+        }
+        return count;
+    }
+}
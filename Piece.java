@@ -4,8 +4,18 @@ package chess;
 isValid() method.                                                           */
 public abstract class Piece {
 
+    //Piece kinds. A piece's code is its kind, with the BLACK bit set for black.
+    static final int PAWN = 1;
+    static final int KNIGHT = 2;
+    static final int BISHOP = 3;
+    static final int ROOK = 4;
+    static final int QUEEN = 5;
+    static final int KING = 6;
+    static final int BLACK = 8;
+
     boolean white;
     char type;
+    int code;
     int row;
     int col;
     boolean hasMoved;
@@ -22,6 +32,7 @@ public abstract class Piece {
     public Piece(boolean white, char type, int row, int col) {
         this.white = white;
         this.type = type;
+        this.code = kindOf(type) | (white ? 0 : BLACK);
         this.row = row;
         this.col = col;
         hasMoved = false;
@@ -36,6 +47,7 @@ public abstract class Piece {
     public Piece(Piece p) {
         this.white = p.isWhite();
         this.type = p.getType();
+        this.code = p.getCode();
         this.row = p.getRow();
         this.col = p.getCol();
         this.hasMoved = p.hasMoved;
@@ -70,6 +82,15 @@ public abstract class Piece {
         return this.type;
     }
 
+    /**
+     * Returns the piece's code (its kind, plus the BLACK bit if it is black).
+     *
+     * @return
+     */
+    public int getCode() {
+        return this.code;
+    }
+
     /**
      * Returns row coordinate of the piece.
      *
@@ -88,6 +109,15 @@ public abstract class Piece {
         return this.col;
     }
 
+    /**
+     * Returns the square index (row * 8 + col) of the piece.
+     *
+     * @return
+     */
+    public int getSquare() {
+        return this.row * 8 + this.col;
+    }
+
     /**
      * Returns the number of moves this pawn has made (used for En Passant).
      *
@@ -119,6 +149,104 @@ public abstract class Piece {
         numMoves++;
     }
 
+    /**
+     * Converts a type char to a piece kind.
+     *
+     * @param type Type char of the piece (either case).
+     * @return The piece kind, or 0 if the char is not a piece type.
+     */
+    static int kindOf(char type) {
+        switch (type) {
+            case 'p':
+            case 'P':
+                return PAWN;
+            case 'h':
+            case 'H':
+                return KNIGHT;
+            case 'b':
+            case 'B':
+                return BISHOP;
+            case 'r':
+            case 'R':
+                return ROOK;
+            case 'q':
+            case 'Q':
+                return QUEEN;
+            case 'k':
+            case 'K':
+                return KING;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Converts a piece code to a type char (lower case for white).
+     *
+     * @param code Code of the piece.
+     * @return
+     */
+    static char typeOf(int code) {
+        char type = " phbrqk ".charAt(code & 7);
+        return ((code & BLACK) == 0 ? type : Character.toUpperCase(type));
+    }
+
+    /**
+     * Creates a new piece from a piece code.
+     *
+     * @param code Code of the piece (kind, plus the BLACK bit if black).
+     * @param row Row number of the piece.
+     * @param col Column number of the piece.
+     * @return The new piece.
+     */
+    static Piece create(int code, int row, int col) {
+        boolean white = (code & BLACK) == 0;
+        char type = typeOf(code);
+        switch (code & 7) {
+            case PAWN:
+                return new Pawn(white, type, row, col);
+            case KNIGHT:
+                return new Knight(white, type, row, col);
+            case BISHOP:
+                return new Bishop(white, type, row, col);
+            case ROOK:
+                return new Rook(white, type, row, col);
+            case QUEEN:
+                return new Queen(white, type, row, col);
+            default:
+                return new King(white, type, row, col);
+        }
+    }
+
+    /**
+     * Puts the piece on a new location as if it had just been created there,
+     * so that a piece taken off the board can be used again.
+     *
+     * @param row Row coordinate.
+     * @param col Column coordinate.
+     */
+    void reset(int row, int col) {
+        this.row = row;
+        this.col = col;
+        hasMoved = false;
+        numMoves = 0;
+    }
+
+    /**
+     * Undoes a call to setPosition(), moving the piece back to its previous
+     * location.
+     *
+     * @param row Previous row coordinate.
+     * @param col Previous column coordinate.
+     * @param hasMoved Whether the piece had moved before.
+     */
+    void undoPosition(int row, int col, boolean hasMoved) {
+        this.row = row;
+        this.col = col;
+        this.hasMoved = hasMoved;
+        numMoves--;
+    }
+
     /**
      * Returns a string containing the team, type, and coordinates of a piece.
      *
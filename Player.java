@@ -10,7 +10,7 @@ public class Player {
     private boolean white;
     private ArrayList<Piece> pieces;
     public ArrayList<Piece> capturedPieces;
-    private Piece king;
+    private Piece king; //Kept up to date as pieces are added and removed
 
     /**
      * Constructor.
@@ -57,7 +57,8 @@ public class Player {
                     break;
                 case 'k':
                 case 'K':
-                    this.pieces.add(new King(q));
+                    this.king = new King(q);
+                    this.pieces.add(this.king);
                     break;
                 default:
                     break;
@@ -93,7 +94,6 @@ public class Player {
                     break;
             }
         }
-        this.king = new King(p.getKing());
     }
 
     /**
@@ -112,6 +112,19 @@ public class Player {
      */
     public void addPiece(Piece p) {
         pieces.add(p);
+        if (isKing(p)) {
+            king = p;
+        }
+    }
+
+    /**
+     * Returns whether a piece is this player's king.
+     *
+     * @param p
+     * @return
+     */
+    private boolean isKing(Piece p) {
+        return p.getType() == (this.white ? 'k' : 'K');
     }
 
     /**
@@ -122,6 +135,41 @@ public class Player {
     public void removePiece(Piece p) {
         pieces.remove(p);
         capturedPieces.add(p);
+        if (p == king) {
+            king = null;
+        }
+    }
+
+    /**
+     * Takes all of this player's pieces, on the board or captured, off its
+     * lists, so that a new position can be set up with them.
+     *
+     * @param removed List the pieces are added to.
+     */
+    void removeAll(ArrayList<Piece> removed) {
+        for (int i = 0; i < pieces.size(); i++) {
+            removed.add(pieces.get(i));
+        }
+        for (int i = 0; i < capturedPieces.size(); i++) {
+            removed.add(capturedPieces.get(i));
+        }
+        pieces.clear();
+        capturedPieces.clear();
+        king = null;
+    }
+
+    /**
+     * Returns a captured piece to this player's list of pieces (used when a
+     * capture is taken back).
+     *
+     * @param p Piece to be restored.
+     */
+    public void restorePiece(Piece p) {
+        capturedPieces.remove(capturedPieces.lastIndexOf(p));
+        pieces.add(p);
+        if (isKing(p)) {
+            king = p;
+        }
     }
 
     /**
@@ -141,18 +189,12 @@ public class Player {
     }
 
     /**
-     * Returns this player's king.
+     * Returns this player's king, or null if it has been captured. The king is
+     * kept as pieces are added and removed, so the list is not searched.
      *
      * @return
      */
     public Piece getKing() {
-        //Find the king in this player's list of pieces
-        for (Piece p : this.pieces) {
-            if (p.getType() == (this.white ? 'k' : 'K')) {
-                king = p; //Point king to p
-                break;
-            }
-        }
         return king;
     }
 
@@ -175,29 +217,26 @@ public class Player {
     }
 
     /**
-     * Performs an analysis to determine whether this player is in check.
+     * Performs an analysis to determine whether this player is in check. The
+     * test is answered from the board's bitboards, so the other player's list
+     * of pieces is not scanned.
      *
      * @param otherPlayerPieces Other player's list of pieces.
      * @param board The board that the player is playing on.
      * @return True if player is in check, false otherwise.
      */
     public boolean inCheck(ArrayList<Piece> otherPlayerPieces, Board board) {
-        for (Piece p : otherPlayerPieces) {
-            //Check if any of the opponents pieces could capture this player's king
-            if (p.isValid(getKing().getRow(), getKing().getCol(), board)) {
-                return true;
-            }
-        }
-        return false;
+        return board.inCheck(this.white);
     }
 
     /**
      * Find and return the player's next move using the minimax algorithm.
      *
+     * @param board The board the game is played on.
      * @return
      */
-    public Move nextMove() {
-        Move nextMove = Minimax.getNextMove(Main.board, this);
+    public Move nextMove(Board board) {
+        Move nextMove = Minimax.getNextMove(board, this);
         return nextMove;
     }
 
@@ -0,0 +1,94 @@
+package chess;
+
+/* Class holding the state of one search thread: the board it makes and unmakes
+moves on, the move buffers and undo objects for each depth, its move ordering
+tables, its statistics and the move it found. Threads searching in parallel
+each have their own context, so the only state they share is the transposition
+table (and in root split mode, the bound published at the root).           */
+public class SearchContext {
+
+    Board board; //Board the search makes and unmakes moves on
+    int search = -1; //Number of the search the context was last used for
+    int rootDepth; //Depth of the search currently running
+    long counter; //Boards evaluated
+    long counted; //Of those, boards added to the engine's total for the search
+    long cutoffs; //Number of beta cutoffs
+    long firstMoveCutoffs; //Cutoffs caused by the first move searched
+    int quiescenceNodes; //Quiescence boards searched below the current leaf
+    long quiescenceTotal; //Quiescence boards searched in all
+    long expanded; //Boards of the main search whose moves were searched
+    long hashProbes; //Transposition table probes, and those that found an entry
+    long hashHits;
+    int selectiveDepth; //Deepest ply reached, quiescence search included
+    boolean helper; //Lazy SMP helper thread, stopped when the main thread is done
+    boolean stopped; //The search ran out of time (or was stopped)
+    int bestMove; //Packed best move found at the root, or 0
+    int score; //Fitness of the best move
+    MoveOrdering ordering = new MoveOrdering();
+    //Move buffers and undo objects for each depth, reused between nodes
+    IntMoveList[] moveLists = new IntMoveList[Engine.MAX_DEPTH + 1];
+    UndoInfo[] undos = new UndoInfo[Engine.MAX_DEPTH + 1];
+    //Likewise for each ply of the quiescence search
+    IntMoveList[] captureLists = new IntMoveList[Engine.MAX_QUIESCENCE_PLY + 1];
+    UndoInfo[] captureUndos = new UndoInfo[Engine.MAX_QUIESCENCE_PLY + 1];
+    int[] rootScores = new int[256]; //Fitness of each root move
+
+    /**
+     * Constructor.
+     */
+    public SearchContext() {
+        for (int i = 0; i <= Engine.MAX_DEPTH; i++) {
+            moveLists[i] = new IntMoveList();
+            undos[i] = new UndoInfo();
+        }
+        for (int i = 0; i <= Engine.MAX_QUIESCENCE_PLY; i++) {
+            captureLists[i] = new IntMoveList();
+            captureUndos[i] = new UndoInfo();
+        }
+    }
+
+    /**
+     * Prepares the context for a search task. The statistics are reset, and
+     * when the task belongs to a new search, the move ordering tables are
+     * aged.
+     *
+     * @param search Number of the search the task belongs to.
+     * @param helper Boolean indicating whether the task is a Lazy SMP helper.
+     */
+    void newTask(int search, boolean helper) {
+        this.helper = helper;
+        stopped = false;
+        bestMove = 0;
+        counter = 0;
+        counted = 0;
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+        quiescenceTotal = 0;
+        expanded = 0;
+        hashProbes = 0;
+        hashHits = 0;
+        selectiveDepth = 0;
+        if (search != this.search) {
+            this.search = search;
+            ordering.newSearch();
+        }
+    }
+
+    /**
+     * Adds the statistics of another context to this one's, eg those of a
+     * thread that searched some of this context's root moves.
+     *
+     * @param other The other context.
+     */
+    void add(SearchContext other) {
+        counter += other.counter;
+        counted += other.counted;
+        cutoffs += other.cutoffs;
+        firstMoveCutoffs += other.firstMoveCutoffs;
+        quiescenceTotal += other.quiescenceTotal;
+        expanded += other.expanded;
+        hashProbes += other.hashProbes;
+        hashHits += other.hashHits;
+        selectiveDepth = Math.max(selectiveDepth, other.selectiveDepth);
+    }
+}
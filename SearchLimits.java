@@ -0,0 +1,86 @@
+package chess;
+
+import java.time.Duration;
+
+/* Class holding the limits of a search: the depth to search to, and the time
+the search may take or the number of boards it may evaluate. Without a time or
+node limit, the board is searched to the given depth; with one, the search
+deepens until the limit is used up or the depth is reached.                 */
+public class SearchLimits {
+
+    private final int depth;
+    private final Duration time; //Null for no time limit
+    private final long nodes; //0 for no node limit
+
+    /**
+     * Constructor.
+     *
+     * @param depth Depth of the decision tree.
+     * @param time Time allowed for the search, or null for no limit.
+     * @param nodes Boards the search may evaluate, or 0 for no limit.
+     */
+    public SearchLimits(int depth, Duration time, long nodes) {
+        this.depth = depth;
+        this.time = time;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Returns limits for a search to a fixed depth.
+     *
+     * @param depth Depth of the decision tree.
+     * @return
+     */
+    public static SearchLimits depth(int depth) {
+        return new SearchLimits(depth, null, 0);
+    }
+
+    /**
+     * Returns limits for a search that deepens until the time runs out.
+     *
+     * @param time Time allowed for the search.
+     * @return
+     */
+    public static SearchLimits time(Duration time) {
+        return new SearchLimits(Engine.MAX_DEPTH, time, 0);
+    }
+
+    /**
+     * Returns limits for a search that deepens until it has evaluated about
+     * the given number of boards, counted over all the threads of the engine.
+     * Each thread adds its count to the total every 1024 boards.
+     *
+     * @param nodes Boards the search may evaluate.
+     * @return
+     */
+    public static SearchLimits nodes(long nodes) {
+        return new SearchLimits(Engine.MAX_DEPTH, null, nodes);
+    }
+
+    /**
+     * Returns the depth of the decision tree.
+     *
+     * @return
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the time allowed for the search, or null for no limit.
+     *
+     * @return
+     */
+    public Duration getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the number of boards the search may evaluate, or 0 for no limit.
+     *
+     * @return
+     */
+    public long getNodes() {
+        return nodes;
+    }
+}
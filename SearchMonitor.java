@@ -0,0 +1,162 @@
+package chess;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/* Publishes the statistics of an engine's searches through JMX, so that they
+can be watched and graphed with JConsole or any JMX client while the engine
+runs. The monitor is set as the engine's stats listener, and registered with
+the platform MBean server under a name such as "chess:type=Engine,name=uci".
+Several engines may share a monitor: the totals then cover all of them, and the
+last search is whichever finished last.                                      */
+public class SearchMonitor implements SearchMonitorMXBean,
+        Consumer<SearchStats> {
+
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong totalNodes = new AtomicLong();
+    private volatile SearchStats last; //Null until a search has finished
+
+    /**
+     * Records the statistics of a finished search. Called by the engine, on
+     * the searching thread.
+     *
+     * @param stats Statistics of the search.
+     */
+    @Override
+    public void accept(SearchStats stats) {
+        searches.incrementAndGet();
+        totalNodes.addAndGet(stats.getNodes());
+        last = stats;
+    }
+
+    /**
+     * Registers the monitor with the platform MBean server.
+     *
+     * @param name Object name to register under.
+     * @return Boolean indicating whether the monitor was registered; it is not
+     * if the name is taken or not valid.
+     */
+    public boolean register(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName(name));
+            return true;
+        } catch (JMException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Removes the monitor registered under a name from the platform MBean
+     * server, if there is one.
+     *
+     * @param name Object name it was registered under.
+     */
+    public static void unregister(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                    new ObjectName(name));
+        } catch (JMException e) {
+            //Not registered
+        }
+    }
+
+    /**
+     * Returns the statistics of the last search, or null if there has not been
+     * one.
+     *
+     * @return
+     */
+    public SearchStats getLast() {
+        return last;
+    }
+
+    @Override
+    public long getSearches() {
+        return searches.get();
+    }
+
+    @Override
+    public long getTotalNodes() {
+        return totalNodes.get();
+    }
+
+    @Override
+    public long getLastNodes() {
+        SearchStats stats = last;
+        return (stats == null ? 0 : stats.getNodes());
+    }
+
+    @Override
+    public long getLastQuiescenceNodes() {
+        SearchStats stats = last;
+        return (stats == null ? 0 : stats.getQuiescenceNodes());
+    }
+
+    @Override
+    public long getLastNodesPerSecond() {
+        SearchStats stats = last;
+        return (stats == null ? 0 : stats.getNodesPerSecond());
+    }
+
+    @Override
+    public double getLastEffectiveBranchingFactor() {
+        SearchStats stats = last;
+        return (stats == null ? 0 : stats.getEffectiveBranchingFactor());
+    }
+
+    @Override
+    public double getLastCutoffRate() {
+        SearchStats stats = last;
+        return (stats == null ? 0 : stats.getCutoffRate());
+    }
+
+    @Override
+    public double getLastFirstMoveCutoffRate() {
+        SearchStats stats = last;
+        return (stats == null ? 0 : stats.getFirstMoveCutoffRate());
+    }
+
+    @Override
+    public double getLastHashHitRate() {
+        SearchStats stats = last;
+        return (stats == null ? 0 : stats.getHashHitRate());
+    }
+
+    @Override
+    public int getLastDepth() {
+        SearchStats stats = last;
+        return (stats == null ? 0 : stats.getDepth());
+    }
+
+    @Override
+    public int getLastSelectiveDepth() {
+        SearchStats stats = last;
+        return (stats == null ? 0 : stats.getSelectiveDepth());
+    }
+
+    @Override
+    public long getLastTimeMillis() {
+        SearchStats stats = last;
+        return (stats == null ? 0 : stats.getTime().toMillis());
+    }
+
+    @Override
+    public long[] getLastIterationMillis() {
+        SearchStats stats = last;
+        if (stats == null) {
+            return new long[0];
+        }
+        List<Duration> iterations = stats.getIterations();
+        long[] millis = new long[iterations.size()];
+        for (int i = 0; i < millis.length; i++) {
+            millis[i] = iterations.get(i).toMillis();
+        }
+        return millis;
+    }
+}
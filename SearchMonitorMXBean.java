@@ -0,0 +1,34 @@
+package chess;
+
+/* Management interface of SearchMonitor, the attributes it publishes through
+JMX: the number of searches and boards since the monitor was created, and the
+statistics of the last search. Times are in milliseconds and rates are
+fractions between 0 and 1.                                                   */
+public interface SearchMonitorMXBean {
+
+    long getSearches();
+
+    long getTotalNodes();
+
+    long getLastNodes();
+
+    long getLastQuiescenceNodes();
+
+    long getLastNodesPerSecond();
+
+    double getLastEffectiveBranchingFactor();
+
+    double getLastCutoffRate();
+
+    double getLastFirstMoveCutoffRate();
+
+    double getLastHashHitRate();
+
+    int getLastDepth();
+
+    int getLastSelectiveDepth();
+
+    long getLastTimeMillis();
+
+    long[] getLastIterationMillis();
+}
@@ -0,0 +1,116 @@
+package chess;
+
+import java.time.Duration;
+import java.util.List;
+
+/* Class holding the result of a search: the move found, its fitness for the
+player to move, the deepest iteration completed, the principal variation and
+the statistics of the search, summed over all its threads.                  */
+public class SearchResult {
+
+    private final Move move; //Null if the player has no safe moves
+    private final int score;
+    private final int depth;
+    private final SearchStats stats;
+    private final List<Move> pv; //Moves expected from the best move onwards
+
+    /**
+     * Constructor.
+     *
+     * @param move The move found, or null if there are no safe moves.
+     * @param score Fitness of the move for the player to move.
+     * @param depth Deepest iteration completed.
+     * @param stats Statistics of the search.
+     * @param pv The principal variation, starting with the move found.
+     */
+    public SearchResult(Move move, int score, int depth, SearchStats stats,
+            List<Move> pv) {
+        this.move = move;
+        this.score = score;
+        this.depth = depth;
+        this.stats = stats;
+        this.pv = pv;
+    }
+
+    /**
+     * Returns the move found, or null if the player has no safe moves.
+     *
+     * @return
+     */
+    public Move getMove() {
+        return move;
+    }
+
+    /**
+     * Returns the fitness of the move for the player to move.
+     *
+     * @return
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the deepest iteration completed.
+     *
+     * @return
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the number of boards evaluated.
+     *
+     * @return
+     */
+    public long getNodes() {
+        return stats.getNodes();
+    }
+
+    /**
+     * Returns the number of beta cutoffs.
+     *
+     * @return
+     */
+    public long getCutoffs() {
+        return stats.getCutoffs();
+    }
+
+    /**
+     * Returns the number of cutoffs caused by the first move searched.
+     *
+     * @return
+     */
+    public long getFirstMoveCutoffs() {
+        return stats.getFirstMoveCutoffs();
+    }
+
+    /**
+     * Returns the time the search took.
+     *
+     * @return
+     */
+    public Duration getTime() {
+        return stats.getTime();
+    }
+
+    /**
+     * Returns the statistics of the search.
+     *
+     * @return
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Returns the principal variation: the move found, followed by the moves
+     * the search expects to be played after it.
+     *
+     * @return
+     */
+    public List<Move> getPrincipalVariation() {
+        return pv;
+    }
+}
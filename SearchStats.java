@@ -0,0 +1,213 @@
+package chess;
+
+import java.time.Duration;
+import java.util.List;
+
+/* Class holding the statistics of a search, summed over all its threads: the
+boards searched (and how many of them by the quiescence search), the beta
+cutoffs, the transposition table probes, the deepest ply reached and the time
+taken by each iteration. The rates derived from them - boards per second,
+effective branching factor, cutoff rate, first-move cutoff rate and hash hit
+rate - are worked out when asked for.                                        */
+public class SearchStats {
+
+    private final long nodes;
+    private final long quiescenceNodes;
+    private final long expandedNodes; //Boards whose moves were searched
+    private final long cutoffs;
+    private final long firstMoveCutoffs;
+    private final long hashProbes;
+    private final long hashHits;
+    private final int depth;
+    private final int selectiveDepth;
+    private final Duration time;
+    private final List<Duration> iterations;
+
+    /**
+     * Constructor.
+     *
+     * @param nodes Boards searched, by the main and quiescence searches.
+     * @param quiescenceNodes Boards searched by the quiescence search.
+     * @param expandedNodes Boards of the main search whose moves were searched.
+     * @param cutoffs Number of beta cutoffs.
+     * @param firstMoveCutoffs Cutoffs caused by the first move searched.
+     * @param hashProbes Number of transposition table probes.
+     * @param hashHits Probes that found an entry for the board.
+     * @param depth Deepest iteration completed.
+     * @param selectiveDepth Deepest ply reached, quiescence search included.
+     * @param time Time the search took.
+     * @param iterations Time taken by each completed iteration, from depth 1.
+     */
+    public SearchStats(long nodes, long quiescenceNodes, long expandedNodes,
+            long cutoffs, long firstMoveCutoffs, long hashProbes, long hashHits,
+            int depth, int selectiveDepth, Duration time,
+            List<Duration> iterations) {
+        this.nodes = nodes;
+        this.quiescenceNodes = quiescenceNodes;
+        this.expandedNodes = expandedNodes;
+        this.cutoffs = cutoffs;
+        this.firstMoveCutoffs = firstMoveCutoffs;
+        this.hashProbes = hashProbes;
+        this.hashHits = hashHits;
+        this.depth = depth;
+        this.selectiveDepth = selectiveDepth;
+        this.time = time;
+        this.iterations = List.copyOf(iterations);
+    }
+
+    /**
+     * Returns the number of boards searched, quiescence boards included.
+     *
+     * @return
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the number of boards searched by the quiescence search.
+     *
+     * @return
+     */
+    public long getQuiescenceNodes() {
+        return quiescenceNodes;
+    }
+
+    /**
+     * Returns the number of beta cutoffs.
+     *
+     * @return
+     */
+    public long getCutoffs() {
+        return cutoffs;
+    }
+
+    /**
+     * Returns the number of cutoffs caused by the first move searched.
+     *
+     * @return
+     */
+    public long getFirstMoveCutoffs() {
+        return firstMoveCutoffs;
+    }
+
+    /**
+     * Returns the number of transposition table probes.
+     *
+     * @return
+     */
+    public long getHashProbes() {
+        return hashProbes;
+    }
+
+    /**
+     * Returns the number of probes that found an entry for the board.
+     *
+     * @return
+     */
+    public long getHashHits() {
+        return hashHits;
+    }
+
+    /**
+     * Returns the deepest iteration completed.
+     *
+     * @return
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the deepest ply reached, the quiescence search included.
+     *
+     * @return
+     */
+    public int getSelectiveDepth() {
+        return selectiveDepth;
+    }
+
+    /**
+     * Returns the time the search took.
+     *
+     * @return
+     */
+    public Duration getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the time taken by each completed iteration, from depth 1. A
+     * search without iterative deepening has a single iteration.
+     *
+     * @return
+     */
+    public List<Duration> getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Returns the number of boards searched per second.
+     *
+     * @return
+     */
+    public long getNodesPerSecond() {
+        return nodes * 1_000_000_000L / Math.max(1, time.toNanos());
+    }
+
+    /**
+     * Returns the effective branching factor: the number of moves that would
+     * have to be searched at every board of a uniform tree as deep as the
+     * deepest iteration to search as many boards.
+     *
+     * @return
+     */
+    public double getEffectiveBranchingFactor() {
+        return (depth == 0 ? 0 : Math.pow(nodes, 1.0 / depth));
+    }
+
+    /**
+     * Returns the fraction of the boards of the main search whose moves were
+     * searched that ended in a beta cutoff.
+     *
+     * @return
+     */
+    public double getCutoffRate() {
+        return (expandedNodes == 0 ? 0 : (double) cutoffs / expandedNodes);
+    }
+
+    /**
+     * Returns the fraction of cutoffs caused by the first move searched, a
+     * measure of how well the moves are ordered.
+     *
+     * @return
+     */
+    public double getFirstMoveCutoffRate() {
+        return (cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs);
+    }
+
+    /**
+     * Returns the fraction of transposition table probes that found an entry.
+     *
+     * @return
+     */
+    public double getHashHitRate() {
+        return (hashProbes == 0 ? 0 : (double) hashHits / hashProbes);
+    }
+
+    /**
+     * Returns a one line summary of the statistics.
+     *
+     * @return
+     */
+    @Override
+    public String toString() {
+        return String.format("Boards evaluated: %d (%d quiescence), depth %d/%d,"
+                + " %d boards/s, branching factor %.2f, cutoffs: %d (%.0f%% of"
+                + " expanded boards, %.0f%% on first move), hash hits: %.0f%%",
+                nodes, quiescenceNodes, depth, selectiveDepth,
+                getNodesPerSecond(), getEffectiveBranchingFactor(), cutoffs,
+                100 * getCutoffRate(), 100 * getFirstMoveCutoffRate(),
+                100 * getHashHitRate());
+    }
+}
@@ -0,0 +1,145 @@
+package chess;
+
+/* Class representing a fixed-size transposition table. Entries are held in two
+parallel arrays: the search result packed into a long - bits 0-24 best move,
+25-40 fitness, 41-48 depth, 49-50 bound type and 51-58 the search the entry was
+stored by - and the Zobrist key of the position XORed with that result. The
+number of entries is a power of two, so a key's slot is found by masking its
+low bits.
+
+The table is shared by all search threads without locking. Two threads storing
+to the same slot at once can leave the key of one entry next to the result of
+the other; XORing the result back out of the stored key then no longer gives
+the position's key, so the torn entry is treated as a miss.                  */
+public class TranspositionTable {
+
+    //Bound types - whether the stored fitness is exact, or a lower/upper bound
+    static final int EXACT = 1;
+    static final int LOWER = 2;
+    static final int UPPER = 3;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+    private volatile int age; //Incremented for every new search
+
+    /**
+     * Constructor.
+     *
+     * @param megabytes Size of the table. Rounded down to a power of two
+     * number of entries (each entry takes 16 bytes).
+     */
+    public TranspositionTable(int megabytes) {
+        long entries = Math.max(1L, (long) megabytes * 1024 * 1024 / 16);
+        int size = (int) Long.highestOneBit(Math.min(entries, 1 << 30));
+        keys = new long[size];
+        data = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Looks up a position in the table.
+     *
+     * @param key Zobrist key of the position.
+     * @return The packed entry for the position, or 0 if it is not stored.
+     */
+    public long probe(long key) {
+        int i = (int) key & mask;
+        long entry = data[i];
+        return ((keys[i] ^ entry) == key ? entry : 0L);
+    }
+
+    /**
+     * Stores a search result. An existing entry for a different position is
+     * only replaced by a result from a search at least as deep, unless it was
+     * stored by an earlier search.
+     *
+     * @param key Zobrist key of the position.
+     * @param depth Depth the position was searched to.
+     * @param bound Bound type of the fitness (EXACT, LOWER or UPPER).
+     * @param score Fitness of the position.
+     * @param move Best move found (packed), or 0.
+     */
+    public void store(long key, int depth, int bound, int score, int move) {
+        int i = (int) key & mask;
+        long old = data[i];
+        boolean same = (keys[i] ^ old) == key;
+        if (!same && old != 0 && depth < depth(old)
+                && (int) (old >>> 51) == age) {
+            return; //Keep the deeper entry
+        }
+        if (move == 0 && same) {
+            move = move(old); //Keep the best move found by an earlier search
+        }
+        long entry = (move & 0x1FFFFFFL) | ((score & 0xFFFFL) << 25)
+                | ((long) Math.min(depth, 255) << 41) | ((long) bound << 49)
+                | ((long) age << 51);
+        keys[i] = key ^ entry;
+        data[i] = entry;
+    }
+
+    /**
+     * Marks the start of a new search, so entries from earlier searches are
+     * preferred for replacement.
+     */
+    public void newSearch() {
+        age = (age + 1) & 0xFF;
+    }
+
+    /**
+     * Removes all entries from the table.
+     */
+    public void clear() {
+        java.util.Arrays.fill(keys, 0L);
+        java.util.Arrays.fill(data, 0L);
+    }
+
+    /**
+     * Returns the number of entries the table can hold.
+     *
+     * @return
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the best move of a packed entry.
+     *
+     * @param entry The packed entry.
+     * @return
+     */
+    static int move(long entry) {
+        return (int) (entry & 0x1FFFFFF);
+    }
+
+    /**
+     * Returns the fitness of a packed entry.
+     *
+     * @param entry The packed entry.
+     * @return
+     */
+    static int score(long entry) {
+        return (short) (entry >>> 25);
+    }
+
+    /**
+     * Returns the depth of a packed entry.
+     *
+     * @param entry The packed entry.
+     * @return
+     */
+    static int depth(long entry) {
+        return (int) (entry >>> 41) & 0xFF;
+    }
+
+    /**
+     * Returns the bound type of a packed entry.
+     *
+     * @param entry The packed entry.
+     * @return
+     */
+    static int bound(long entry) {
+        return (int) (entry >>> 49) & 3;
+    }
+}
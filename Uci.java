@@ -0,0 +1,378 @@
+package chess;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/* Universal Chess Interface front end, so that the engine can be driven by
+GUIs and match tooling. Commands are read from standard input, one per line;
+the supported ones are uci, isready, ucinewgame, setoption (Hash, Threads and
+BookFile), position, go, stop and quit. Moves are written in coordinate
+notation, as read by Move.parse().
+
+The search runs on a background thread, so that stop (or quit) is read while it
+is running. An info line is written as each depth completes, with its score,
+the selective depth, the boards evaluated, the boards per second and the
+principal variation. Scores are in centipawns, a pawn being worth 10 on this
+engine's scale. The statistics of each search are also published through JMX,
+as "chess:type=Engine,name=uci" (see SearchMonitor).
+
+With an opening book set (BookFile, the path of a book in the Polyglot format), a
+position found in the book is answered at once with the book's move, without a
+search. Searches with "go infinite" always search, since they are for analysis.
+
+Usage: java chess.Main uci                                                   */
+public class Uci {
+
+    private static final int MAX_HASH = 4096; //Megabytes
+    private static final int MAX_THREADS = 256;
+    //Time left is assumed to be for this many more moves, without movestogo
+    private static final int MOVES_TO_GO = 30;
+    private static final String MONITOR_NAME = "chess:type=Engine,name=uci";
+    private final BufferedReader input;
+    private final PrintStream output;
+    private final Engine engine = new Engine();
+    private final SearchMonitor monitor = new SearchMonitor();
+    private OpeningBook book; //Null unless a book file is set
+    private Board board = new Board(); //Replaced, never changed, by position
+    private Thread searcher; //The search running in the background, if any
+    private CountDownLatch stopped; //Released by stop, for go infinite
+
+    /**
+     * Constructor.
+     *
+     * @param input Reader of the commands.
+     * @param output Stream that the replies are written to.
+     */
+    public Uci(BufferedReader input, PrintStream output) {
+        this.input = input;
+        this.output = output;
+        engine.setListener(this::info);
+        engine.setStatsListener(monitor);
+    }
+
+    /**
+     * Reads and runs commands until quit, or the end of the input. Meanwhile
+     * the statistics of the searches are published through JMX.
+     */
+    public void run() throws IOException {
+        boolean registered = monitor.register(MONITOR_NAME);
+        try {
+            read();
+        } finally {
+            stopSearch();
+            engine.close();
+            if (registered) {
+                SearchMonitor.unregister(MONITOR_NAME);
+            }
+        }
+    }
+
+    /**
+     * Reads and runs commands until quit, or the end of the input.
+     */
+    private void read() throws IOException {
+        for (String line = input.readLine(); line != null;
+                line = input.readLine()) {
+            String[] tokens = line.trim().split("\\s+");
+            switch (tokens[0]) {
+                case "uci":
+                    send("id name Chess");
+                    send("id author aidenosi");
+                    send("option name Hash type spin default 16 min 1 max "
+                            + MAX_HASH);
+                    send("option name Threads type spin default 1 min 1 max "
+                            + MAX_THREADS);
+                    send("option name BookFile type string default <empty>");
+                    send("uciok");
+                    break;
+                case "isready":
+                    send("readyok");
+                    break;
+                case "ucinewgame":
+                    stopSearch();
+                    engine.clearHash();
+                    break;
+                case "setoption":
+                    stopSearch();
+                    setOption(line);
+                    break;
+                case "position":
+                    stopSearch();
+                    position(tokens);
+                    break;
+                case "go":
+                    stopSearch();
+                    go(tokens);
+                    break;
+                case "stop":
+                    stopSearch();
+                    break;
+                case "quit":
+                    return;
+                default: //Unknown commands are ignored
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Sets an option: "setoption name Hash value 64", "setoption name Threads
+     * value 4" or "setoption name BookFile value openings.bin" (or "<empty>"
+     * for no book). Other options are ignored. The boards allowed by "go
+     * nodes" are counted over all the Threads, not given to each.
+     *
+     * @param line The command.
+     */
+    private void setOption(String line) {
+        int name = line.indexOf(" name ");
+        int value = line.indexOf(" value ");
+        if (name < 0 || value < name) {
+            return;
+        }
+        String option = line.substring(name + 6, value).trim();
+        if (option.equalsIgnoreCase("BookFile")) {
+            setBook(line.substring(value + 7).trim());
+            return;
+        }
+        try {
+            int n = Integer.parseInt(line.substring(value + 7).trim());
+            if (option.equalsIgnoreCase("Hash")) {
+                engine.setHashSize(Math.max(1, Math.min(n, MAX_HASH)));
+            } else if (option.equalsIgnoreCase("Threads")) {
+                engine.setThreads(Math.max(1, Math.min(n, MAX_THREADS)));
+            }
+        } catch (NumberFormatException e) {
+            send("info string Invalid value for " + option);
+        }
+    }
+
+    /**
+     * Opens the opening book, replacing the one in use.
+     *
+     * @param file Path of the book, or "<empty>" (or nothing) for no book.
+     */
+    private void setBook(String file) {
+        book = null;
+        if (file.isEmpty() || file.equals("<empty>")) {
+            return;
+        }
+        try {
+            book = OpeningBook.open(Paths.get(file));
+        } catch (IOException | RuntimeException e) { //Eg an invalid path
+            send("info string Cannot open book " + file);
+        }
+    }
+
+    /**
+     * Sets up the board: "position startpos [moves ...]" or "position fen
+     * <FEN> [moves ...]".
+     *
+     * @param tokens The words of the command.
+     */
+    private void position(String[] tokens) {
+        int i = 1;
+        Board next;
+        if (i < tokens.length && tokens[i].equals("fen")) {
+            StringBuilder fen = new StringBuilder();
+            for (i++; i < tokens.length && !tokens[i].equals("moves"); i++) {
+                fen.append(tokens[i]).append(' ');
+            }
+            try {
+                next = Board.fromFen(fen.toString());
+            } catch (IllegalArgumentException e) {
+                send("info string " + e.getMessage());
+                return;
+            }
+        } else {
+            next = new Board();
+            i++;
+        }
+        if (i < tokens.length && tokens[i].equals("moves")) {
+            IntMoveList legal = new IntMoveList();
+            for (i++; i < tokens.length; i++) {
+                Move move = Move.parse(tokens[i], next);
+                int packed = (move == null ? 0 : move.pack(next));
+                legal.clear();
+                MoveGenerator.generateLegalMoves(next, next.isWhiteToMove(),
+                        legal);
+                if (packed == 0 || !legal.contains(packed)) {
+                    send("info string Invalid move " + tokens[i]);
+                    break;
+                }
+                next.makeMove(packed, new UndoInfo());
+            }
+        }
+        board = next;
+    }
+
+    /**
+     * Starts a search of the board in the background: "go" followed by any of
+     * depth, nodes, movetime, wtime, btime, winc, binc, movestogo and
+     * infinite. Without a time given, the search runs until its depth or
+     * nodes are reached, or it is stopped. A "go" that gives no depth, nodes
+     * or time for the player to move is taken as "go infinite", as it is by
+     * other engines: the search runs until "stop", which the move then waits
+     * for.
+     *
+     * @param tokens The words of the command.
+     */
+    private void go(String[] tokens) {
+        int depth = Engine.MAX_DEPTH;
+        long nodes = 0;
+        long moveTime = -1;
+        long[] time = {-1, -1}; //Milliseconds left for white and black
+        long[] increment = {0, 0};
+        int movesToGo = 0;
+        boolean infinite = false;
+        boolean limited = false; //Whether a depth, nodes or movetime is given
+        try {
+            for (int i = 1; i < tokens.length; i++) {
+                switch (tokens[i]) {
+                    case "depth":
+                        depth = Integer.parseInt(tokens[++i]);
+                        limited = true;
+                        break;
+                    case "nodes":
+                        nodes = Long.parseLong(tokens[++i]);
+                        limited = true;
+                        break;
+                    case "movetime":
+                        moveTime = Long.parseLong(tokens[++i]);
+                        limited = true;
+                        break;
+                    case "wtime":
+                    case "btime":
+                        time[tokens[i].charAt(0) == 'w' ? 0 : 1]
+                                = Long.parseLong(tokens[++i]);
+                        break;
+                    case "winc":
+                    case "binc":
+                        increment[tokens[i].charAt(0) == 'w' ? 0 : 1]
+                                = Long.parseLong(tokens[++i]);
+                        break;
+                    case "movestogo":
+                        movesToGo = Integer.parseInt(tokens[++i]);
+                        break;
+                    case "infinite":
+                        infinite = true;
+                        break;
+                    default: //Eg ponder and searchmoves, not supported
+                        break;
+                }
+            }
+        } catch (RuntimeException e) { //Missing or malformed number
+            send("info string Invalid go command");
+            return;
+        }
+        int side = (board.isWhiteToMove() ? 0 : 1);
+        infinite |= (!limited && time[side] < 0);
+        int move = (book == null || infinite ? 0 : book.lookup(board));
+        if (move != 0) {
+            send("info string Book move");
+            send("bestmove " + new Move(move).toCoordinate());
+            return;
+        }
+        if (moveTime < 0 && time[side] >= 0 && !infinite) {
+            //Share the time left between the moves to go, keeping half back
+            moveTime = time[side] / (movesToGo > 0 ? movesToGo : MOVES_TO_GO)
+                    + increment[side] / 2;
+            moveTime = Math.max(1, Math.min(moveTime, time[side] / 2));
+        }
+        SearchLimits limits = new SearchLimits(depth,
+                (moveTime < 0 || infinite ? null : Duration.ofMillis(moveTime)),
+                (infinite ? 0 : nodes));
+        Board root = board;
+        CountDownLatch stop = new CountDownLatch(1);
+        boolean waitForStop = infinite;
+        stopped = stop;
+        searcher = new Thread(() -> {
+            SearchResult result = engine.search(root, limits);
+            if (waitForStop) { //The move is only given once stop is sent
+                try {
+                    stop.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            send("bestmove " + (result.getMove() == null ? "0000"
+                    : result.getMove().toCoordinate()));
+        }, "search");
+        searcher.start();
+    }
+
+    /**
+     * Stops the running search, if any, and waits for it to give its move.
+     */
+    private void stopSearch() {
+        if (searcher == null) {
+            return;
+        }
+        stopped.countDown();
+        try {
+            //Repeated, in case the search had not yet started when first asked
+            while (searcher.isAlive()) {
+                engine.stop();
+                searcher.join(10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        searcher = null;
+    }
+
+    /**
+     * Writes an info line for a completed depth of the search.
+     *
+     * @param result The result of the depth.
+     */
+    private void info(SearchResult result) {
+        long ms = result.getTime().toMillis();
+        StringBuilder line = new StringBuilder("info depth ")
+                .append(result.getDepth())
+                .append(" seldepth ").append(result.getStats().getSelectiveDepth())
+                .append(" score ").append(score(result))
+                .append(" nodes ").append(result.getNodes())
+                .append(" nps ").append(result.getStats().getNodesPerSecond())
+                .append(" time ").append(ms)
+                .append(" pv");
+        List<Move> pv = result.getPrincipalVariation();
+        for (Move m : pv) {
+            line.append(' ').append(m.toCoordinate());
+        }
+        send(line.toString());
+    }
+
+    /**
+     * Writes a score as UCI expects it: "cp" and centipawns, or "mate" and
+     * the number of moves to mate (negative if the engine is being mated).
+     *
+     * @param result The result of a depth of the search.
+     * @return
+     */
+    static String score(SearchResult result) {
+        int score = result.getScore();
+        if (Math.abs(score) > Engine.MATE / 2) {
+            //The fitness of a mate grows with the depth left when it happens
+            int plies = result.getDepth() - (Math.abs(score) - Engine.MATE);
+            int moves = (plies + 1) / 2;
+            return "mate " + (score > 0 ? moves : -moves);
+        }
+        return "cp " + score * 10;
+    }
+
+    /**
+     * Writes a line of output. Lines are written by both the reading and the
+     * searching thread, so one line is written at a time.
+     *
+     * @param line
+     */
+    private synchronized void send(String line) {
+        output.println(line);
+        output.flush();
+    }
+}
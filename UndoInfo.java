@@ -0,0 +1,30 @@
+package chess;
+
+/* Class holding the information needed to take back a move made with
+Board.makeMove(): the pieces that were moved, captured or promoted, and the 
+board state that the move overwrote.                                        */
+public class UndoInfo {
+
+    int move; //The packed move
+    Piece piece; //The piece that was moved
+    int from; //Square the piece was moved from
+    boolean hasMoved; //Whether the piece had moved before this move
+    Piece captured; //The piece that was captured (or null)
+    Piece rook; //The rook moved when castling (or null)
+    int rookFrom;
+    boolean rookHasMoved;
+    Piece promoted; //The piece a pawn was promoted to (or null)
+    int castling;
+    int enPassant;
+    int halfMoves;
+    long key;
+    //Attack maps of the board before the move, and which of them were known
+    long whiteAttacks;
+    long blackAttacks;
+    int attacksKnown;
+    //Pieces created for promotions made with this undo object, indexed by
+    //code. An undo object is only reused once its move has been taken back,
+    //which takes the promoted piece off the board, so the piece is reused too.
+    Piece[] promotions;
+    Move lastMove;
+}
@@ -0,0 +1,54 @@
+package chess;
+
+import java.util.Random;
+
+/* Class containing the random numbers used for Zobrist hashing. A board's key
+is the XOR of one number per piece on each square, plus numbers for the player
+to move, the castling rights and the en passant column, so the key can be kept
+up to date by XORing numbers in and out as pieces move.                      */
+public class Zobrist {
+
+    static final long[][] PIECES = new long[16][64]; //Indexed by piece code
+    static final long[] CASTLING = new long[16]; //Indexed by castling rights
+    static final long[] EN_PASSANT = new long[8]; //Indexed by column
+    static final long BLACK_TO_MOVE;
+
+    static {
+        //Fixed seed, so keys are the same between runs
+        Random random = new Random(0x5EED_C4E55L);
+        for (long[] squares : PIECES) {
+            for (int sq = 0; sq < 64; sq++) {
+                squares[sq] = random.nextLong();
+            }
+        }
+        for (int i = 0; i < 16; i++) {
+            CASTLING[i] = random.nextLong();
+        }
+        for (int i = 0; i < 8; i++) {
+            EN_PASSANT[i] = random.nextLong();
+        }
+        BLACK_TO_MOVE = random.nextLong();
+    }
+
+    /**
+     * Computes the key of a board from scratch.
+     *
+     * @param board The board to compute the key for.
+     * @return
+     */
+    static long key(Board board) {
+        long key = CASTLING[board.getCastling()];
+        for (int sq = 0; sq < 64; sq++) {
+            if (board.mailbox[sq] != null) {
+                key ^= PIECES[board.mailbox[sq].getCode()][sq];
+            }
+        }
+        if (board.getEnPassant() >= 0) {
+            key ^= EN_PASSANT[board.getEnPassant() & 7];
+        }
+        if (!board.isWhiteToMove()) {
+            key ^= BLACK_TO_MOVE;
+        }
+        return key;
+    }
+}